@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Extracts the fast-startup war and records an AppCDS archive from a training run.
+#
+#   mvn -Dfast-startup package
+#   scripts/build-cds-archive.sh [war] [destination]
+#
+# Start the application with:
+#   java -XX:SharedArchiveFile=<destination>/application.jsa -Dspring.aot.enabled=true \
+#        -Dspring.profiles.active=prod -jar <destination>/kitchensink-0.0.1-SNAPSHOT.war
+set -euo pipefail
+
+WAR=${1:-target/kitchensink-0.0.1-SNAPSHOT.war}
+DEST=${2:-target/application}
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+
+rm -rf "$DEST"
+"$JAVA" -Djarmode=tools -jar "$WAR" extract --destination "$DEST"
+
+# The training run stops once the context has refreshed, so it needs no Mongo server.
+# Index creation is skipped because it would wait for one.
+"$JAVA" -XX:ArchiveClassesAtExit="$DEST/application.jsa" \
+    -Dspring.context.exit=onRefresh \
+    -Dspring.aot.enabled=true \
+    -Dspring.profiles.active=prod \
+    -jar "$DEST/$(basename "$WAR")" \
+    --spring.data.mongodb.auto-index-creation=false
+
+echo "CDS archive written to $DEST/application.jsa"
@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+# Measures time-to-first-request: from JVM launch until POST /api/auth/login returns a token.
+# Each mode is started RUNS times and the individual and average times are printed.
+#
+#   scripts/startup-benchmark.sh [runs]
+#
+# Modes: the default war, the fast-startup war with AOT, and AOT plus the CDS archive built by
+# scripts/build-cds-archive.sh. Missing artifacts are skipped.
+set -uo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-8085}
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+APP=target/application
+WAR_NAME=kitchensink-0.0.1-SNAPSHOT.war
+
+first_request_ms() {
+    local start now pid
+    start=$(date +%s%N)
+    "$@" --server.port="$PORT" > /dev/null 2>&1 &
+    pid=$!
+    until curl -sf -X POST "http://localhost:$PORT/api/auth/login" \
+            -H 'Content-Type: application/json' \
+            -d '{"username":"user","password":"password"}' > /dev/null 2>&1; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "failed"
+            return 1
+        fi
+        sleep 0.02
+    done
+    now=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2> /dev/null
+    echo $(( (now - start) / 1000000 ))
+}
+
+bench() {
+    local name=$1 total=0 ms
+    shift
+    printf '%-10s' "$name"
+    for _ in $(seq "$RUNS"); do
+        ms=$(first_request_ms "$@") || { echo " failed"; return; }
+        printf ' %6s' "$ms"
+        total=$((total + ms))
+    done
+    printf '   avg %s ms\n' $((total / RUNS))
+}
+
+COMMON=(--spring.data.mongodb.auto-index-creation=false)
+
+echo "time to first request in ms, $RUNS runs"
+if [ -f "target/$WAR_NAME" ]; then
+    bench "war" "$JAVA" -jar "target/$WAR_NAME" "${COMMON[@]}"
+fi
+if [ -f "$APP/$WAR_NAME" ]; then
+    bench "aot" "$JAVA" -Dspring.aot.enabled=true -Dspring.profiles.active=prod \
+        -jar "$APP/$WAR_NAME" "${COMMON[@]}"
+fi
+if [ -f "$APP/application.jsa" ]; then
+    bench "aot+cds" "$JAVA" -XX:SharedArchiveFile="$APP/application.jsa" -Dspring.aot.enabled=true \
+        -Dspring.profiles.active=prod -jar "$APP/$WAR_NAME" "${COMMON[@]}"
+fi
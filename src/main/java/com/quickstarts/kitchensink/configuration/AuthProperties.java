@@ -0,0 +1,33 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Login and token settings.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.auth")
+public class AuthProperties {
+
+    // Threads verifying passwords, bcrypt is CPU bound so more than the cores never helps
+    private int passwordThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Logins waiting for a thread, further logins are answered with 503
+    private int passwordQueue = 32;
+
+    // Fixed bcrypt cost, calibrated to bcryptTargetLatency at startup when not set
+    private Integer bcryptStrength;
+
+    private Duration bcryptTargetLatency = Duration.ofMillis(250);
+
+    private int bcryptMinStrength = 10;
+
+    private int bcryptMaxStrength = 14;
+
+    private Duration accessTokenTtl = Duration.ofHours(1);
+
+    private Duration refreshTokenTtl = Duration.ofDays(7);
+}
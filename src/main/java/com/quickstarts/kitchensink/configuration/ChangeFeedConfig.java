@@ -0,0 +1,17 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.service.MemberChangeFeed;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ChangeFeedProperties.class)
+public class ChangeFeedConfig {
+
+    @Bean
+    public MemberChangeFeed memberChangeFeed(ChangeFeedProperties properties, MeterRegistry meterRegistry) {
+        return new MemberChangeFeed(properties, meterRegistry);
+    }
+}
@@ -0,0 +1,28 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the member change stream served by {@code GET /members/changes}.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.changes")
+public class ChangeFeedProperties {
+
+    // Changes queued for a subscriber before it is dropped as too slow
+    private int subscriberBuffer = 256;
+
+    // Recent changes kept for subscribers resuming with Last-Event-ID
+    private int historySize = 10_000;
+
+    private Duration historyRetention = Duration.ofMinutes(10);
+
+    // Comment sent to quiet subscribers, keeps proxies from closing the stream and finds dead ones
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    // Streams are closed after this long, clients reconnect and resume with Last-Event-ID
+    private Duration streamTimeout = Duration.ofMinutes(30);
+}
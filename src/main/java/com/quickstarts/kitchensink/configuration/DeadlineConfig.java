@@ -0,0 +1,41 @@
+package com.quickstarts.kitchensink.configuration;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+@Configuration
+@EnableConfigurationProperties({DeadlineProperties.class, HedgingProperties.class})
+public class DeadlineConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kitchensink.deadline", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<RequestDeadlineFilter> requestDeadlineFilter(DeadlineProperties properties) {
+        FilterRegistrationBean<RequestDeadlineFilter> registration = new FilterRegistrationBean<>(new RequestDeadlineFilter(properties));
+        // Ahead of security, so authentication counts against the deadline too
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    /**
+     * Bounds every Mongo operation made through the application's database factory by the
+     * request deadline.
+     */
+    @Bean
+    public static BeanPostProcessor deadlineMongoDatabaseFactoryPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof MongoDatabaseFactory factory && !(bean instanceof DeadlineMongoDatabaseFactory)) {
+                    return new DeadlineMongoDatabaseFactory(factory);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoOperationTimeoutException;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoDatabase;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out databases bounded by the {@link RequestDeadline} of the calling thread.
+ * <p>
+ * The remaining time becomes the driver's operation timeout ({@code timeoutMS}), which the
+ * driver sends to the server as {@code maxTimeMS} and also enforces on connection checkout
+ * and socket reads, so a slow node cannot hold the request past its deadline. Threads
+ * without a deadline, such as background jobs, are not limited. Timeouts surface as
+ * {@link QueryTimeoutException}.
+ */
+public class DeadlineMongoDatabaseFactory implements MongoDatabaseFactory {
+
+    private final MongoDatabaseFactory delegate;
+    private final PersistenceExceptionTranslator exceptionTranslator;
+
+    public DeadlineMongoDatabaseFactory(MongoDatabaseFactory delegate) {
+        this.delegate = delegate;
+        PersistenceExceptionTranslator translator = delegate.getExceptionTranslator();
+        this.exceptionTranslator = ex -> {
+            if (ex instanceof MongoOperationTimeoutException || ex instanceof MongoExecutionTimeoutException) {
+                return new QueryTimeoutException(ex.getMessage(), ex);
+            }
+            return translator.translateExceptionIfPossible(ex);
+        };
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase() throws DataAccessException {
+        return bounded(delegate.getMongoDatabase());
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase(String dbName) throws DataAccessException {
+        return bounded(delegate.getMongoDatabase(dbName));
+    }
+
+    @Override
+    public PersistenceExceptionTranslator getExceptionTranslator() {
+        return exceptionTranslator;
+    }
+
+    @Override
+    public CodecRegistry getCodecRegistry() {
+        return delegate.getCodecRegistry();
+    }
+
+    @Override
+    public ClientSession getSession(ClientSessionOptions options) {
+        return delegate.getSession(options);
+    }
+
+    @Override
+    public MongoDatabaseFactory withSession(ClientSession session) {
+        return new DeadlineMongoDatabaseFactory(delegate.withSession(session));
+    }
+
+    @Override
+    public boolean isTransactionActive() {
+        return delegate.isTransactionActive();
+    }
+
+    private static MongoDatabase bounded(MongoDatabase database) {
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline == null) {
+            return database;
+        }
+        long remaining = deadline.remainingMillis();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException("Request deadline exceeded before the query was sent");
+        }
+        return database.withTimeout(remaining, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,23 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Per-request deadlines. Clients may ask for a shorter or longer one with the header, e.g.
+ * {@code X-Request-Timeout: 250ms}, up to {@code maxTimeout}.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.deadline")
+public class DeadlineProperties {
+
+    private boolean enabled = true;
+
+    private String header = "X-Request-Timeout";
+
+    private Duration defaultTimeout = Duration.ofSeconds(5);
+
+    private Duration maxTimeout = Duration.ofSeconds(30);
+}
@@ -0,0 +1,32 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.repository.EmbeddedMemberRepository;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * Serves members from {@link EmbeddedMemberRepository} instead of Mongo when the
+ * {@code embedded} profile is active. {@code application-embedded.properties} turns off the
+ * Mongo auto-configuration, so no server is needed.
+ */
+@Configuration
+@Profile("embedded")
+@EnableConfigurationProperties(EmbeddedStoreProperties.class)
+public class EmbeddedStoreConfig {
+
+    @Bean
+    @Primary
+    public EmbeddedMemberRepository embeddedMemberRepository(EmbeddedStoreProperties properties) {
+        if (!StringUtils.hasText(properties.getDataDir())) {
+            return new EmbeddedMemberRepository();
+        }
+        return new EmbeddedMemberRepository(Path.of(properties.getDataDir(), "members.log"),
+                properties.getCompactAfterRecords(), properties.getForceInterval().toMillis());
+    }
+}
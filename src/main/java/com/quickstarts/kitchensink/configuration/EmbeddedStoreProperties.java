@@ -0,0 +1,24 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the embedded member store used by the {@code embedded} profile.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.embedded")
+public class EmbeddedStoreProperties {
+
+    // Directory of the member log, leave empty to keep members in memory only
+    private String dataDir = "data/embedded";
+
+    // How often the log is forced to disk, zero forces on every write. Unforced writes
+    // survive a process crash but not a machine crash.
+    private Duration forceInterval = Duration.ofSeconds(1);
+
+    // The log is rewritten once it holds this many records and twice as many as there are members
+    private long compactAfterRecords = 10_000;
+}
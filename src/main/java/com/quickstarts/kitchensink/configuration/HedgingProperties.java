@@ -0,0 +1,28 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Hedged member lookups: a lookup that has not returned after the observed
+ * {@code percentile} latency is sent a second time with {@code readPreference}, and the
+ * first answer is used.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.hedging")
+public class HedgingProperties {
+
+    private boolean enabled = false;
+
+    private String readPreference = "secondaryPreferred";
+
+    private double percentile = 0.95;
+
+    // Lookups observed before hedging starts, the percentile is meaningless before that
+    private int minSamples = 100;
+
+    // Never hedge sooner than this, however fast lookups usually are
+    private Duration minDelay = Duration.ofMillis(2);
+}
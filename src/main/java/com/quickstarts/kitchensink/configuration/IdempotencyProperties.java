@@ -0,0 +1,28 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for replaying responses to requests repeated with the same {@code Idempotency-Key}.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.idempotency")
+public class IdempotencyProperties {
+
+    // How long a completed response is replayed for
+    private Duration ttl = Duration.ofHours(24);
+
+    // Completed responses kept in memory, the least recently used are dropped first
+    private int maxEntries = 10_000;
+
+    // Also keep responses in Mongo so that retries reaching another instance are replayed
+    private boolean shared = false;
+
+    private String collection = "idempotency_keys";
+
+    // How long a retry waits for the first request to finish, cut short by its own deadline
+    private Duration inProgressWait = Duration.ofSeconds(10);
+}
@@ -1,12 +1,18 @@
 package com.quickstarts.kitchensink.configuration;
 
 import com.quickstarts.kitchensink.util.JwtUtil;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -17,9 +23,15 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
+    private final ObservationRegistry observationRegistry;
+    // Defined by SecurityConfig, which needs this filter first
+    private final ObjectProvider<UserDetailsService> userDetailsService;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, ObservationRegistry observationRegistry,
+                                   ObjectProvider<UserDetailsService> userDetailsService) {
         this.jwtUtil = jwtUtil;
+        this.observationRegistry = observationRegistry;
+        this.userDetailsService = userDetailsService;
     }
 
     @Override
@@ -29,18 +41,37 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
             String token = authorizationHeader.substring(7);
-            String username = jwtUtil.extractUsername(token);
+            Observation verification = Observation.createNotStarted("kitchensink.auth.jwt", observationRegistry)
+                    .contextualName("jwt verification");
+            verification.observe(() -> verification.lowCardinalityKeyValue("outcome", authenticate(token)));
+        }
+
+        filterChain.doFilter(request, response);
+    }
 
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                if (jwtUtil.validateToken(token, username)) {
+    private String authenticate(String token) {
+        String username = jwtUtil.extractUsername(token);
 
-                    SecurityContextHolder.getContext().setAuthentication(
-                            new UsernamePasswordAuthenticationToken(username, null, null)
-                    );
+        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (jwtUtil.validateToken(token, username)) {
+                // The user is looked up per request, so disabling it or taking a role away applies to
+                // access tokens already issued, as it does to refreshing them
+                UserDetails user;
+                try {
+                    user = userDetailsService.getObject().loadUserByUsername(username);
+                } catch (UsernameNotFoundException e) {
+                    return "rejected";
                 }
+                if (!user.isEnabled() || !user.isAccountNonLocked() || !user.isAccountNonExpired()) {
+                    return "rejected";
+                }
+                SecurityContextHolder.getContext().setAuthentication(
+                        UsernamePasswordAuthenticationToken.authenticated(username, null, user.getAuthorities())
+                );
+                return "authenticated";
             }
+            return "rejected";
         }
-
-        filterChain.doFilter(request, response);
+        return "skipped";
     }
 }
@@ -0,0 +1,17 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.service.MemberLookupBatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(MemberLookupProperties.class)
+public class MemberLookupConfig {
+
+    @Bean
+    public MemberLookupBatcher memberLookupBatcher(MemberLookupProperties properties, MeterRegistry meterRegistry) {
+        return new MemberLookupBatcher(properties.getBatchWindow(), properties.getMaxBatchSize(), meterRegistry);
+    }
+}
@@ -0,0 +1,21 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "kitchensink.lookup")
+public class MemberLookupProperties {
+
+    // GET /members/{id} lookups arriving while a lookup query is running share the next $in
+    // query, sent when the running one finishes or after this long; zero sends every lookup on its own
+    private Duration batchWindow = Duration.ofMillis(2);
+
+    // A batch is sent as soon as it holds this many ids
+    private int maxBatchSize = 100;
+
+    // Most ids a single POST /members/lookup may ask for
+    private int maxIds = 100;
+}
@@ -0,0 +1,36 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for splitting the members collection across several Mongo databases.
+ * Every entry of {@code uris} is one partition and must name its database, e.g.
+ * {@code mongodb://localhost:27017/kitchensink_p0}.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.partitioning")
+public class MemberPartitioningProperties {
+
+    private boolean enabled = false;
+
+    private List<String> uris = new ArrayList<>();
+
+    // Number of partitions that own data. Defaults to the number of uris; a smaller value
+    // leaves the trailing uris as drain-only sources while a shrink is being rebalanced.
+    private Integer partitions;
+
+    private int rebalanceBatchSize = 500;
+
+    private Duration rebalancePause = Duration.ZERO;
+
+    private boolean rebalanceOnStartup = false;
+
+    public int activePartitions() {
+        return partitions != null ? partitions : uris.size();
+    }
+}
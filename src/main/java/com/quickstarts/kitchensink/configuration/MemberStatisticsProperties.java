@@ -0,0 +1,23 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "kitchensink.stats")
+public class MemberStatisticsProperties {
+
+    // Width and number of the registration buckets, the newest bucket is the current one
+    private Duration bucketSize = Duration.ofHours(1);
+
+    private int bucketCount = 24;
+
+    private int topDomains = 10;
+
+    // Domains tracked by the Space-Saving sketch, larger values tighten the error bounds
+    private int sketchCapacity = 100;
+
+    private Duration reconcileInterval = Duration.ofMinutes(5);
+}
@@ -0,0 +1,30 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.controller.MemberViewEndpoint;
+import com.quickstarts.kitchensink.repository.MemberCollections;
+import com.quickstarts.kitchensink.service.MemberView;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "kitchensink.member-view", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(MemberViewProperties.class)
+public class MemberViewConfig {
+
+    @Bean
+    public MemberView memberView(MemberCollections memberCollections, MemberViewProperties properties,
+                                 MeterRegistry meterRegistry) {
+        if (memberCollections.templates().isEmpty()) {
+            throw new IllegalStateException("kitchensink.member-view.enabled needs members stored in Mongo");
+        }
+        return new MemberView(memberCollections.templates(), properties, meterRegistry);
+    }
+
+    @Bean
+    public MemberViewEndpoint memberViewEndpoint(MemberView memberView) {
+        return new MemberViewEndpoint(memberView);
+    }
+}
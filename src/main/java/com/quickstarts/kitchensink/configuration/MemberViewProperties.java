@@ -0,0 +1,29 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the in-memory member view kept current by a change stream. Change streams
+ * need a replica set, a single-node one is enough.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.member-view")
+public class MemberViewProperties {
+
+    private boolean enabled = false;
+
+    // Reads go to Mongo while the view is further behind than this
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    // How long the stream waits on the server for new events before reporting itself current
+    private Duration maxAwaitTime = Duration.ofMillis(500);
+
+    // Delay before reopening a failed stream, doubled on every consecutive failure up to a minute
+    private Duration retryDelay = Duration.ofSeconds(1);
+
+    // How often each stream's resume token is stored, a restarted view resumes from the stored one
+    private Duration checkpointInterval = Duration.ofSeconds(10);
+}
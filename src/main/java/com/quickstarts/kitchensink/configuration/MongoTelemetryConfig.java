@@ -0,0 +1,47 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.client.MongoClient;
+import com.quickstarts.kitchensink.controller.SlowCommandsEndpoint;
+import com.quickstarts.kitchensink.repository.MemberPartitions;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.stream.Stream;
+
+/**
+ * Driver listeners for pool checkout latency and slow command capture. They are added through
+ * a {@link MongoClientSettingsBuilderCustomizer}, so every client the application creates,
+ * including the partition clients, reports through them.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "kitchensink.mongo.telemetry", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(MongoTelemetryProperties.class)
+public class MongoTelemetryConfig {
+
+    @Bean
+    public SlowCommandRecorder slowCommandRecorder(MongoTelemetryProperties properties,
+                                                   ObjectProvider<MongoClient> mongoClients,
+                                                   ObjectProvider<MemberPartitions> memberPartitions) {
+        return new SlowCommandRecorder(properties, () -> Stream.concat(mongoClients.stream(),
+                memberPartitions.stream().flatMap(partitions -> partitions.clients().stream())).toList());
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoTelemetryCustomizer(MeterRegistry meterRegistry,
+                                                                       SlowCommandRecorder slowCommandRecorder) {
+        PoolCheckoutMetricsListener poolListener = new PoolCheckoutMetricsListener(meterRegistry);
+        return settings -> settings
+                .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(poolListener))
+                .addCommandListener(slowCommandRecorder);
+    }
+
+    @Bean
+    public SlowCommandsEndpoint slowCommandsEndpoint(SlowCommandRecorder slowCommandRecorder) {
+        return new SlowCommandsEndpoint(slowCommandRecorder);
+    }
+}
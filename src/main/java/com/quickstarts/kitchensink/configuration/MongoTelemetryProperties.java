@@ -0,0 +1,25 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the Mongo driver telemetry beyond what Spring Boot's
+ * {@code mongodb.driver.commands} and {@code mongodb.driver.pool.*} metrics provide.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.mongo.telemetry")
+public class MongoTelemetryProperties {
+
+    private boolean enabled = true;
+
+    // Commands slower than this are kept in the slow command buffer
+    private Duration slowCommandThreshold = Duration.ofMillis(100);
+
+    private int slowCommandCapacity = 100;
+
+    // Runs explain for slow reads; this costs an extra round trip per slow command
+    private boolean explain = false;
+}
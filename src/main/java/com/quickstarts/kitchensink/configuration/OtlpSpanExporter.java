@@ -0,0 +1,236 @@
+package com.quickstarts.kitchensink.configuration;
+
+import brave.Span;
+import brave.handler.MutableSpan;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends the spans kept by the {@link TailSamplingSpanHandler} in OTLP/JSON, batched on a
+ * background thread. The {@code file} exporter appends one export request per line, the
+ * {@code otlp} exporter posts it to an OTLP/HTTP collector. Spans that do not fit the queue,
+ * or whose export fails, are counted and dropped; tracing never holds up a request.
+ */
+@Slf4j
+public class OtlpSpanExporter implements Consumer<List<MutableSpan>>, DisposableBean {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final TracingProperties.Exporter exporter;
+    private final Path file;
+    private final URI endpoint;
+    private final String serviceName;
+    private final long intervalNanos;
+    private final int batchSize;
+    private final BlockingQueue<MutableSpan> queue;
+    private final Counter exported;
+    private final Counter dropped;
+    private final HttpClient httpClient;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private boolean failing;
+
+    public OtlpSpanExporter(TracingProperties properties, String serviceName, MeterRegistry meterRegistry) {
+        this.exporter = properties.getExporter();
+        this.file = Path.of(properties.getFile());
+        this.endpoint = URI.create(properties.getOtlpEndpoint());
+        this.serviceName = serviceName;
+        this.intervalNanos = properties.getExportInterval().toNanos();
+        this.batchSize = properties.getExportBatchSize();
+        this.queue = new ArrayBlockingQueue<>(properties.getExportQueueSize());
+        this.exported = Counter.builder("kitchensink.tracing.spans.exported")
+                .description("Spans written by the trace exporter")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("kitchensink.tracing.spans.dropped")
+                .description("Kept spans lost because the export queue was full or the export failed")
+                .register(meterRegistry);
+        this.httpClient = exporter == TracingProperties.Exporter.OTLP
+                ? HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build()
+                : null;
+        this.worker = new Thread(this::run, "span-exporter");
+        worker.setDaemon(true);
+        if (exporter != TracingProperties.Exporter.NONE) {
+            worker.start();
+        }
+    }
+
+    @Override
+    public void accept(List<MutableSpan> spans) {
+        if (exporter == TracingProperties.Exporter.NONE) {
+            return;
+        }
+        for (MutableSpan span : spans) {
+            if (!queue.offer(span)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private void run() {
+        List<MutableSpan> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < batchSize) {
+                    MutableSpan span = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (span == null) {
+                        break;
+                    }
+                    batch.add(span);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<MutableSpan> batch) {
+        try {
+            byte[] request = JSON.writeValueAsBytes(encode(batch));
+            if (exporter == TracingProperties.Exporter.FILE) {
+                write(request);
+            } else {
+                post(request);
+            }
+            exported.increment(batch.size());
+            if (failing) {
+                failing = false;
+                log.info("Span export to {} recovered", exporter == TracingProperties.Exporter.FILE ? file : endpoint);
+            }
+        } catch (IOException | RuntimeException e) {
+            dropped.increment(batch.size());
+            // Logged once per outage rather than once per batch
+            if (!failing) {
+                failing = true;
+                log.warn("Could not export {} spans, dropping them until the exporter recovers: {}", batch.size(), e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            running = false;
+            dropped.increment(batch.size());
+        }
+    }
+
+    private void write(byte[] request) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        byte[] line = new byte[request.length + 1];
+        System.arraycopy(request, 0, line, 0, request.length);
+        line[request.length] = '\n';
+        Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void post(byte[] request) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(endpoint)
+                        .timeout(Duration.ofSeconds(10))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Collector answered " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    /**
+     * An OTLP {@code ExportTraceServiceRequest} in its JSON mapping.
+     */
+    Map<String, Object> encode(List<MutableSpan> batch) {
+        List<Map<String, Object>> spans = new ArrayList<>(batch.size());
+        for (MutableSpan span : batch) {
+            spans.add(encode(span));
+        }
+        return Map.of("resourceSpans", List.of(Map.of(
+                "resource", Map.of("attributes", List.of(attribute("service.name", serviceName))),
+                "scopeSpans", List.of(Map.of(
+                        "scope", Map.of("name", "kitchensink"),
+                        "spans", spans)))));
+    }
+
+    private static Map<String, Object> encode(MutableSpan span) {
+        Map<String, Object> encoded = new LinkedHashMap<>();
+        // 64-bit trace ids are widened to the 128 bits OTLP expects
+        encoded.put("traceId", span.traceId().length() == 32 ? span.traceId() : "0000000000000000" + span.traceId());
+        encoded.put("spanId", span.id());
+        if (span.parentId() != null) {
+            encoded.put("parentSpanId", span.parentId());
+        }
+        encoded.put("name", span.name() != null ? span.name() : "unknown");
+        encoded.put("kind", kind(span.kind()));
+        // Brave records microseconds, OTLP wants nanoseconds as a string
+        encoded.put("startTimeUnixNano", Long.toString(span.startTimestamp() * 1000));
+        encoded.put("endTimeUnixNano", Long.toString(span.finishTimestamp() * 1000));
+
+        List<Map<String, Object>> attributes = new ArrayList<>();
+        span.forEachTag((target, key, value) -> target.add(attribute(key, value)), attributes);
+        if (span.remoteServiceName() != null) {
+            attributes.add(attribute("peer.service", span.remoteServiceName()));
+        }
+        if (span.remoteIp() != null) {
+            attributes.add(attribute("net.peer.ip", span.remoteIp()));
+        }
+        encoded.put("attributes", attributes);
+
+        List<Map<String, Object>> events = new ArrayList<>();
+        span.forEachAnnotation((target, timestamp, value) ->
+                target.add(Map.of("timeUnixNano", Long.toString(timestamp * 1000), "name", value)), events);
+        if (!events.isEmpty()) {
+            encoded.put("events", events);
+        }
+
+        String error = span.error() != null ? String.valueOf(span.error().getMessage()) : span.tag("error");
+        encoded.put("status", error != null ? Map.of("code", 2, "message", error) : Map.of());
+        return encoded;
+    }
+
+    private static int kind(Span.Kind kind) {
+        if (kind == null) {
+            return 1;
+        }
+        return switch (kind) {
+            case SERVER -> 2;
+            case CLIENT -> 3;
+            case PRODUCER -> 4;
+            case CONSUMER -> 5;
+        };
+    }
+
+    private static Map<String, Object> attribute(String key, String value) {
+        return Map.of("key", key, "value", Map.of("stringValue", value));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // The worker writes out what is queued within an export interval and then stops
+        running = false;
+        worker.join(TimeUnit.NANOSECONDS.toMillis(intervalNanos) + TimeUnit.SECONDS.toMillis(5));
+    }
+}
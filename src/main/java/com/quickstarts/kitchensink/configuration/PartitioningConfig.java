@@ -0,0 +1,75 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.quickstarts.kitchensink.controller.MemberPartitionsEndpoint;
+import com.quickstarts.kitchensink.repository.MemberPartitions;
+import com.quickstarts.kitchensink.repository.MemberRebalancer;
+import com.quickstarts.kitchensink.repository.PartitionedMemberRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the single-database {@code MemberRepository} with {@link PartitionedMemberRepository}
+ * when {@code kitchensink.partitioning.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "kitchensink.partitioning", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(MemberPartitioningProperties.class)
+public class PartitioningConfig {
+
+    @Bean
+    public MemberPartitions memberPartitions(MemberPartitioningProperties properties, MongoConverter mongoConverter,
+                                             ObjectProvider<MongoClientSettingsBuilderCustomizer> customizers) {
+        List<MongoClient> clients = new ArrayList<>();
+        List<MongoTemplate> templates = new ArrayList<>();
+        for (String uri : properties.getUris()) {
+            ConnectionString connectionString = new ConnectionString(uri);
+            if (connectionString.getDatabase() == null) {
+                throw new IllegalStateException("Partition uri " + uri + " does not name a database");
+            }
+            MongoClientSettings.Builder settings = MongoClientSettings.builder().applyConnectionString(connectionString);
+            // Same driver listeners and options as the default client
+            customizers.orderedStream().forEach(customizer -> customizer.customize(settings));
+            MongoClient client = MongoClients.create(settings.build());
+            clients.add(client);
+            templates.add(new MongoTemplate(new DeadlineMongoDatabaseFactory(
+                    new SimpleMongoClientDatabaseFactory(client, connectionString.getDatabase())), mongoConverter));
+        }
+        return new MemberPartitions(clients, templates, properties.activePartitions());
+    }
+
+    @Bean
+    @Primary
+    public PartitionedMemberRepository partitionedMemberRepository(MemberPartitions memberPartitions) {
+        return new PartitionedMemberRepository(memberPartitions);
+    }
+
+    @Bean
+    public MemberRebalancer memberRebalancer(MemberPartitions memberPartitions, MemberPartitioningProperties properties) {
+        MemberRebalancer rebalancer = new MemberRebalancer(memberPartitions,
+                properties.getRebalanceBatchSize(), properties.getRebalancePause());
+        if (properties.isRebalanceOnStartup()) {
+            rebalancer.start();
+        }
+        return rebalancer;
+    }
+
+    @Bean
+    public MemberPartitionsEndpoint memberPartitionsEndpoint(MemberRebalancer memberRebalancer) {
+        return new MemberPartitionsEndpoint(memberRebalancer);
+    }
+}
@@ -0,0 +1,44 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long operations wait to check a connection out of the driver pool. Pool size
+ * and connections in use come from Spring Boot's {@code mongodb.driver.pool.*} gauges.
+ */
+class PoolCheckoutMetricsListener implements ConnectionPoolListener {
+
+    private final MeterRegistry meterRegistry;
+
+    PoolCheckoutMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        timer(event.getConnectionId().getServerId(), "success")
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        timer(event.getServerId(), event.getReason().name().toLowerCase())
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(ServerId serverId, String outcome) {
+        return Timer.builder("mongodb.driver.pool.checkout")
+                .description("Time spent waiting for a pooled connection")
+                .tag("server.address", serverId.getAddress().toString())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
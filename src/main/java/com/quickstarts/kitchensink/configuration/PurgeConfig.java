@@ -0,0 +1,21 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.repository.MemberCollections;
+import com.quickstarts.kitchensink.repository.MemberPurger;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(PurgeProperties.class)
+public class PurgeConfig {
+
+    @Bean
+    public MemberPurger memberPurger(MemberRepository memberRepository, MemberCollections memberCollections,
+                                     ApplicationEventPublisher events, PurgeProperties properties) {
+        return new MemberPurger(memberRepository, memberCollections, events,
+                properties.getChunkSize(), properties.getPause(), properties.getRetainedJobs());
+    }
+}
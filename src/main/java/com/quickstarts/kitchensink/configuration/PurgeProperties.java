@@ -0,0 +1,23 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings for the background purge started by {@code DELETE /members}.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.purge")
+public class PurgeProperties {
+
+    // Members deleted per chunk when purging a domain
+    private int chunkSize = 1000;
+
+    // Pause between chunks, leaving the primary room for other writes
+    private Duration pause = Duration.ofMillis(50);
+
+    // Finished jobs whose status can still be looked up
+    private int retainedJobs = 100;
+}
@@ -0,0 +1,64 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonDocument;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts read commands per server they were executed on and the read preference mode the
+ * driver sent with them, to show where routed reads actually land.
+ */
+class ReadNodeMetricsListener implements CommandListener {
+
+    private static final Set<String> READ_COMMANDS = Set.of("find", "aggregate", "count", "distinct");
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, String> modes = new ConcurrentHashMap<>();
+
+    ReadNodeMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (READ_COMMANDS.contains(event.getCommandName())) {
+            BsonDocument readPreference = event.getCommand().getDocument("$readPreference", null);
+            modes.put(event.getRequestId(),
+                    readPreference != null ? readPreference.getString("mode").getValue() : "primary");
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getRequestId(), event.getCommandName(),
+                event.getConnectionDescription().getServerAddress().toString(), "success");
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getRequestId(), event.getCommandName(),
+                event.getConnectionDescription().getServerAddress().toString(), "failed");
+    }
+
+    private void record(int requestId, String command, String server, String status) {
+        String mode = modes.remove(requestId);
+        if (mode != null) {
+            Counter.builder("kitchensink.mongo.reads")
+                    .description("Read commands by the server that executed them")
+                    .tag("server", server)
+                    .tag("mode", mode)
+                    .tag("command", command)
+                    .tag("status", status)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.quickstarts.kitchensink.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ReadRoutingProperties.class)
+public class ReadRoutingConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kitchensink.read-routing", name = "enabled", havingValue = "true")
+    public MongoClientSettingsBuilderCustomizer readNodeMetricsCustomizer(MeterRegistry meterRegistry) {
+        ReadNodeMetricsListener listener = new ReadNodeMetricsListener(meterRegistry);
+        return settings -> settings.addCommandListener(listener);
+    }
+}
@@ -0,0 +1,65 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.ReadPreference;
+import com.quickstarts.kitchensink.service.MemberReadOperation;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation read preferences for member reads. Operations without an entry, and every
+ * operation while routing is disabled, read from the primary.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.read-routing")
+public class ReadRoutingProperties {
+
+    // Mongo rejects a maxStalenessSeconds below 90 seconds
+    private static final Duration MIN_MAX_STALENESS = Duration.ofSeconds(90);
+
+    private boolean enabled = false;
+
+    // How long reads of a client that has just written keep going to the primary, at least
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+
+    private Map<MemberReadOperation, Route> operations = new EnumMap<>(MemberReadOperation.class);
+
+    /**
+     * The read-your-writes window stretched to the largest {@code max-staleness} of the
+     * routes: a secondary that far behind is still eligible, so a shorter window would let
+     * a client read from one before its write arrived.
+     */
+    public Duration effectiveReadYourWritesWindow() {
+        return operations.values().stream()
+                .filter(route -> !route.readPreference.equals("primary"))
+                .map(Route::getMaxStaleness)
+                .filter(Objects::nonNull)
+                .reduce(readYourWritesWindow, (window, staleness) -> staleness.compareTo(window) > 0 ? staleness : window);
+    }
+
+    @Data
+    public static class Route {
+
+        private String readPreference = "primary";
+
+        private Duration maxStaleness;
+
+        public ReadPreference toReadPreference() {
+            ReadPreference preference = ReadPreference.valueOf(readPreference);
+            if (maxStaleness == null || preference.equals(ReadPreference.primary())) {
+                return preference;
+            }
+            if (maxStaleness.compareTo(MIN_MAX_STALENESS) < 0) {
+                throw new IllegalStateException("max-staleness for " + readPreference + " must be at least "
+                        + MIN_MAX_STALENESS.toSeconds() + " seconds");
+            }
+            return ReadPreference.valueOf(readPreference, List.of(), maxStaleness.toSeconds(), TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Gives every request a {@link RequestDeadline}, from the timeout header if the client sent
+ * one and the configured default otherwise. Mongo operations made while handling the request
+ * are bounded by it through {@link DeadlineMongoDatabaseFactory}.
+ */
+@Slf4j
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    private final DeadlineProperties properties;
+
+    public RequestDeadlineFilter(DeadlineProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestDeadline.set(RequestDeadline.after(timeoutOf(request)));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    private Duration timeoutOf(HttpServletRequest request) {
+        String value = request.getHeader(properties.getHeader());
+        if (value == null || value.isBlank()) {
+            return properties.getDefaultTimeout();
+        }
+        try {
+            // A plain number is milliseconds
+            Duration timeout = DurationStyle.detectAndParse(value.trim());
+            if (timeout.isNegative() || timeout.isZero()) {
+                return properties.getDefaultTimeout();
+            }
+            return timeout.compareTo(properties.getMaxTimeout()) > 0 ? properties.getMaxTimeout() : timeout;
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed {} header {}", properties.getHeader(), value);
+            return properties.getDefaultTimeout();
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package com.quickstarts.kitchensink.configuration;
 
+import com.quickstarts.kitchensink.controller.MemberPartitionsEndpoint;
+import com.quickstarts.kitchensink.controller.MemberSnapshotEndpoint;
+import com.quickstarts.kitchensink.controller.SlowCommandsEndpoint;
+import com.quickstarts.kitchensink.util.BCryptCalibration;
+import jakarta.servlet.DispatcherType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -13,14 +22,20 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
+@Slf4j
 @Configuration
+@EnableConfigurationProperties(AuthProperties.class)
 public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final AuthProperties authProperties;
 
-    public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter) {
+    public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter, AuthProperties authProperties) {
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+        this.authProperties = authProperties;
     }
 
     @Bean
@@ -41,7 +56,14 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        Integer strength = authProperties.getBcryptStrength();
+        if (strength == null) {
+            strength = BCryptCalibration.strengthFor(authProperties.getBcryptTargetLatency(),
+                    authProperties.getBcryptMinStrength(), authProperties.getBcryptMaxStrength());
+            log.info("Calibrated bcrypt strength {} for a {} ms hash", strength, authProperties.getBcryptTargetLatency().toMillis());
+        }
+        // Hashes of another strength still verify, the strength is part of the hash
+        return new BCryptPasswordEncoder(strength);
     }
 
     @Bean
@@ -49,7 +71,15 @@ public class SecurityConfig {
         http.csrf(csrf -> csrf.disable()) // Disable CSRF for REST APIs
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs", "/swagger-resources/**", "/webjars/**").permitAll()
-                        .requestMatchers("/api/auth/login").permitAll()
+                        .requestMatchers("/api/auth/login", "/api/auth/refresh").permitAll()
+                        // Streams such as /members/changes end with an async dispatch, authorized when they started
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        // A rebalance moves members between the partitions
+                        .requestMatchers(writesTo(MemberPartitionsEndpoint.class)).hasRole("ADMIN")
+                        // Clearing the slow commands throws away what an operator is investigating
+                        .requestMatchers(writesTo(SlowCommandsEndpoint.class)).hasRole("ADMIN")
+                        // Snapshots read every member and a restore replaces them
+                        .requestMatchers(writesTo(MemberSnapshotEndpoint.class)).hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
@@ -58,6 +88,13 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * The write and delete operations of an actuator endpoint; its reads stay open to users.
+     */
+    private static RequestMatcher writesTo(Class<?> endpoint) {
+        return new AndRequestMatcher(EndpointRequest.to(endpoint), request -> !HttpMethod.GET.matches(request.getMethod()));
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration authenticationConfiguration) throws Exception {
         return authenticationConfiguration.getAuthenticationManager();
@@ -0,0 +1,263 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the most recent commands that took longer than a threshold in a fixed size ring
+ * buffer. Each entry records the shape of the filter with every literal replaced by
+ * {@code "?"}, and optionally the query plan, which is fetched off the driver thread.
+ * <p>
+ * Only the command name and collection are noted when a command starts. Commands are
+ * copied only for the kinds, a command on a collection, that have already been slow
+ * once, so the first slow command of a kind is recorded without a shape. The time a
+ * {@code getMore} on an awaitData cursor, such as a change stream, spends waiting for
+ * new documents is not counted.
+ */
+@Slf4j
+public class SlowCommandRecorder implements CommandListener, DisposableBean {
+
+    private static final Set<String> IGNORED = Set.of("explain", "hello", "isMaster", "ismaster", "ping",
+            "buildInfo", "saslStart", "saslContinue", "endSessions", "killCursors");
+    private static final Set<String> EXPLAINABLE = Set.of("find", "aggregate", "count", "distinct");
+    private static final Set<String> KEPT = Set.of("filter", "query", "pipeline", "sort", "projection",
+            "key", "limit", "skip", "hint", "cursor", "collection");
+    // Bounds the kinds of commands copied when they start
+    private static final int MAX_WATCHED = 1024;
+    private static final Set<String> VERBATIM = Set.of("sort", "projection", "$sort", "$project", "hint");
+
+    private final long thresholdNanos;
+    private final boolean explain;
+    private final Supplier<List<MongoClient>> clients;
+    private final AtomicReferenceArray<SlowCommand> buffer;
+    private final AtomicLong next = new AtomicLong();
+    private final Map<Integer, Started> started = new ConcurrentHashMap<>();
+    private final Set<String> watched = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(16), runnable -> {
+        Thread thread = new Thread(runnable, "slow-command-explain");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    @Getter
+    public static class SlowCommand {
+        private final Instant at;
+        private final String database;
+        private final String collection;
+        private final String command;
+        private final String server;
+        private final long durationMillis;
+        private final boolean failed;
+        private final String shape;
+        private volatile String explain;
+
+        SlowCommand(Instant at, String database, String collection, String command, String server,
+                    long durationMillis, boolean failed, String shape) {
+            this.at = at;
+            this.database = database;
+            this.collection = collection;
+            this.command = command;
+            this.server = server;
+            this.durationMillis = durationMillis;
+            this.failed = failed;
+            this.shape = shape;
+        }
+    }
+
+    private record Started(String collection, long awaitNanos, BsonDocument command) {
+    }
+
+    /**
+     * @param clients the clients whose commands this listener sees, used to run explain
+     */
+    public SlowCommandRecorder(MongoTelemetryProperties properties, Supplier<List<MongoClient>> clients) {
+        this.thresholdNanos = properties.getSlowCommandThreshold().toNanos();
+        this.explain = properties.isExplain();
+        this.clients = clients;
+        this.buffer = new AtomicReferenceArray<>(properties.getSlowCommandCapacity());
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String name = event.getCommandName();
+        if (IGNORED.contains(name)) {
+            return;
+        }
+        BsonDocument command = event.getCommand();
+        BsonValue target = command.get(name);
+        String collection = target != null && target.isString() ? target.asString().getValue()
+                : command.isString("collection") ? command.getString("collection").getValue() : null;
+        // A getMore only carries maxTimeMS on an awaitData cursor, where it is the time the
+        // server waits for new documents before answering with an empty batch
+        long awaitNanos = name.equals("getMore") && command.isNumber("maxTimeMS")
+                ? TimeUnit.MILLISECONDS.toNanos(command.getNumber("maxTimeMS").longValue()) : 0;
+        // The event's document is a view of the outgoing buffer, which is released once the command
+        // is sent, so the parts of a watched command are copied now
+        started.put(event.getRequestId(), new Started(collection, awaitNanos,
+                watched.contains(kind(event.getDatabaseName(), collection, name)) ? kept(name, command) : null));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        complete(event.getRequestId(), event.getCommandName(), event.getDatabaseName(),
+                event.getConnectionDescription().getServerAddress(), event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        complete(event.getRequestId(), event.getCommandName(), event.getDatabaseName(),
+                event.getConnectionDescription().getServerAddress(), event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+
+    public List<SlowCommand> slowCommands() {
+        List<SlowCommand> commands = new ArrayList<>();
+        for (int i = 0; i < buffer.length(); i++) {
+            SlowCommand command = buffer.get(i);
+            if (command != null) {
+                commands.add(command);
+            }
+        }
+        commands.sort(Comparator.comparing(SlowCommand::getAt).reversed());
+        return commands;
+    }
+
+    public void clear() {
+        for (int i = 0; i < buffer.length(); i++) {
+            buffer.set(i, null);
+        }
+    }
+
+    private void complete(int requestId, String name, String database, ServerAddress server, long elapsedNanos,
+                          boolean failed) {
+        Started start = started.remove(requestId);
+        if (start == null || elapsedNanos - start.awaitNanos() < thresholdNanos || buffer.length() == 0) {
+            return;
+        }
+        if (start.command() == null && watched.size() < MAX_WATCHED) {
+            watched.add(kind(database, start.collection(), name));
+        }
+        String shape = start.command() != null ? commandShape(name, start.command()).toJson() : null;
+        SlowCommand slow = new SlowCommand(Instant.now(), database, start.collection(), name, server.toString(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), failed, shape);
+        buffer.set((int) (next.getAndIncrement() % buffer.length()), slow);
+        log.warn("Slow mongo command {} on {}.{} took {} ms: {}", name, database, start.collection(),
+                slow.getDurationMillis(), shape != null ? shape : "no shape yet");
+        if (explain && !failed && start.command() != null && EXPLAINABLE.contains(name)) {
+            explainExecutor.execute(() -> explain(slow, server, database, start.command()));
+        }
+    }
+
+    private static String kind(String database, String collection, String name) {
+        return database + "." + collection + " " + name;
+    }
+
+    private static BsonDocument commandShape(String name, BsonDocument command) {
+        BsonDocument shape = new BsonDocument();
+        command.forEach((key, value) -> {
+            if (!key.equals(name)) {
+                shape.put(key, shapeOf(key, value));
+            }
+        });
+        return shape;
+    }
+
+    /**
+     * The parts of a command needed for its shape and for re-running it under explain.
+     */
+    private static BsonDocument kept(String name, BsonDocument command) {
+        BsonValue target = command.get(name);
+        BsonDocument kept = new BsonDocument(name, target != null ? target : BsonNull.VALUE);
+        command.forEach((key, value) -> {
+            if (KEPT.contains(key)) {
+                kept.put(key, copy(value));
+            }
+        });
+        for (String write : List.of("updates", "deletes")) {
+            if (command.isArray(write) && !command.getArray(write).isEmpty()) {
+                BsonValue first = command.getArray(write).get(0);
+                if (first.isDocument() && first.asDocument().containsKey("q")) {
+                    kept.put("filter", copy(first.asDocument().get("q")));
+                }
+            }
+        }
+        return kept;
+    }
+
+    private static BsonValue copy(BsonValue value) {
+        // Documents and arrays may still be views of the driver's buffer, the other values are decoded
+        return value.isDocument() ? value.asDocument().clone() : value.isArray() ? value.asArray().clone() : value;
+    }
+
+    private void explain(SlowCommand slow, ServerAddress server, String database, BsonDocument command) {
+        // Partition clients share this listener, explain with the one connected to the server that ran it
+        MongoClient client = clients.get().stream()
+                .filter(candidate -> candidate.getClusterDescription().getServerDescriptions().stream()
+                        .anyMatch(description -> description.getAddress().equals(server)))
+                .findFirst()
+                .orElse(null);
+        if (client == null) {
+            return;
+        }
+        try {
+            Document plan = client.getDatabase(database).runCommand(
+                    new BsonDocument("explain", command).append("verbosity", new BsonString("queryPlanner")));
+            slow.explain = plan.toJson();
+        } catch (RuntimeException e) {
+            log.debug("Could not explain slow {} command", slow.getCommand(), e);
+        }
+    }
+
+    private static BsonValue shapeOf(String key, BsonValue value) {
+        if (VERBATIM.contains(key)) {
+            return value;
+        }
+        if (value.isDocument()) {
+            BsonDocument shaped = new BsonDocument();
+            value.asDocument().forEach((field, nested) -> shaped.put(field, shapeOf(field, nested)));
+            return shaped;
+        }
+        if (value.isArray()) {
+            BsonArray array = value.asArray();
+            if (!array.isEmpty() && array.get(0).isDocument()) {
+                BsonArray shaped = new BsonArray();
+                array.forEach(element -> shaped.add(shapeOf(key, element)));
+                return shaped;
+            }
+            return new BsonArray(List.of(new BsonString("?")));
+        }
+        return new BsonString("?");
+    }
+
+    @Override
+    public void destroy() {
+        explainExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,28 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.quickstarts.kitchensink.controller.MemberSnapshotEndpoint;
+import com.quickstarts.kitchensink.repository.MemberCollections;
+import com.quickstarts.kitchensink.repository.MemberSnapshotter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+@EnableConfigurationProperties(SnapshotProperties.class)
+public class SnapshotConfig {
+
+    @Bean
+    public MemberSnapshotter memberSnapshotter(MemberCollections memberCollections, ApplicationEventPublisher events,
+                                               SnapshotProperties properties) {
+        return new MemberSnapshotter(memberCollections, events, Path.of(properties.getDirectory()),
+                Math.toIntExact(properties.getChunkSize().toBytes()), properties.getRestoreThreads());
+    }
+
+    @Bean
+    public MemberSnapshotEndpoint memberSnapshotEndpoint(MemberSnapshotter memberSnapshotter) {
+        return new MemberSnapshotEndpoint(memberSnapshotter);
+    }
+}
@@ -0,0 +1,21 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for member snapshots, see the membersnapshot actuator endpoint.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.snapshot")
+public class SnapshotProperties {
+
+    // Snapshots are written to and restored from this directory only
+    private String directory = "snapshots";
+
+    // Unit of checksumming and of the bulk inserts on restore
+    private DataSize chunkSize = DataSize.ofMegabytes(1);
+
+    private int restoreThreads = 4;
+}
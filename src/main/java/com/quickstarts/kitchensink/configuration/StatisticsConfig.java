@@ -0,0 +1,11 @@
+package com.quickstarts.kitchensink.configuration;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(MemberStatisticsProperties.class)
+public class StatisticsConfig {
+}
@@ -0,0 +1,191 @@
+package com.quickstarts.kitchensink.configuration;
+
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Buffers the spans of each trace until its local root span ends and then decides whether
+ * to keep the whole trace: always when any span failed or the root took at least the
+ * latency threshold, otherwise with the configured probability. Head sampling cannot do
+ * this, it decides before anyone knows whether the request will be slow.
+ * <p>
+ * Spans that end after their trace was decided follow the decision. Traces whose root does
+ * not end within the timeout, or that would push the buffer past its limit, are decided on
+ * the spans seen so far.
+ */
+@Slf4j
+public class TailSamplingSpanHandler extends SpanHandler implements DisposableBean {
+
+    private static final int REMEMBERED_DECISIONS = 10_000;
+
+    private final long thresholdMicros;
+    private final double sampleRate;
+    private final int maxBufferedSpans;
+    private final long traceTimeoutNanos;
+    private final Consumer<List<MutableSpan>> exporter;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, PendingTrace> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final Map<String, Boolean> decided = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > REMEMBERED_DECISIONS;
+        }
+    };
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trace-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final class PendingTrace {
+        private final long firstSeenNanos = System.nanoTime();
+        private final List<MutableSpan> spans = new ArrayList<>();
+        private boolean error;
+        private long longestMicros;
+        private boolean decided;
+    }
+
+    public TailSamplingSpanHandler(TracingProperties properties, Consumer<List<MutableSpan>> exporter,
+                                   MeterRegistry meterRegistry) {
+        this.thresholdMicros = TimeUnit.NANOSECONDS.toMicros(properties.getLatencyThreshold().toNanos());
+        this.sampleRate = properties.getSamplePercentage() / 100.0;
+        this.maxBufferedSpans = properties.getMaxBufferedSpans();
+        this.traceTimeoutNanos = properties.getTraceTimeout().toNanos();
+        this.exporter = exporter;
+        this.meterRegistry = meterRegistry;
+        long sweepMillis = Math.max(100, properties.getTraceTimeout().toMillis() / 4);
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+        if (cause == Cause.ABANDONED) {
+            return true;
+        }
+        String traceId = context.traceIdString();
+        // The decision is checked again atomically with creating the trace, one taken in
+        // between would otherwise leave the span in a new trace of its own
+        PendingTrace trace = decision(traceId) != null ? null : pending.compute(traceId,
+                (id, existing) -> existing != null || decision(id) != null ? existing : new PendingTrace());
+        if (trace != null) {
+            boolean added = false;
+            synchronized (trace) {
+                if (!trace.decided) {
+                    trace.spans.add(span);
+                    trace.error |= failed(span);
+                    trace.longestMicros = Math.max(trace.longestMicros, durationMicros(span));
+                    added = true;
+                }
+            }
+            if (added) {
+                if (buffered.incrementAndGet() > maxBufferedSpans || context.isLocalRoot()) {
+                    decide(traceId, trace);
+                }
+                return true;
+            }
+        }
+        // Decided before or while this span ended, it follows the decision
+        if (Boolean.TRUE.equals(decision(traceId))) {
+            exporter.accept(List.of(span));
+        }
+        return true;
+    }
+
+    private Boolean decision(String traceId) {
+        synchronized (decided) {
+            return decided.get(traceId);
+        }
+    }
+
+    private void decide(String traceId, PendingTrace trace) {
+        List<MutableSpan> spans;
+        String reason;
+        synchronized (trace) {
+            if (trace.decided) {
+                return;
+            }
+            trace.decided = true;
+            spans = trace.spans;
+            if (trace.error) {
+                reason = "error";
+            } else if (trace.longestMicros >= thresholdMicros) {
+                reason = "slow";
+            } else if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                reason = "sampled";
+            } else {
+                reason = "dropped";
+            }
+            // Remembered before the trace leaves the buffer, so late spans find the decision
+            synchronized (decided) {
+                decided.put(traceId, !"dropped".equals(reason));
+            }
+            pending.remove(traceId, trace);
+            buffered.addAndGet(-spans.size());
+        }
+        Counter.builder("kitchensink.tracing.traces")
+                .description("Traces by the tail sampling decision taken for them")
+                .tag("decision", reason)
+                .register(meterRegistry)
+                .increment();
+        if (!"dropped".equals(reason)) {
+            exporter.accept(spans);
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            pending.forEach((traceId, trace) -> {
+                if (now - trace.firstSeenNanos >= traceTimeoutNanos) {
+                    decide(traceId, trace);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not decide timed out traces: {}", e.getMessage());
+        }
+    }
+
+    private static boolean failed(MutableSpan span) {
+        // A denied authorization is an answer, not a failure, the request span still shows the 4xx
+        if (span.tag("spring.security.authorization.decision") != null) {
+            return false;
+        }
+        if (span.error() != null || span.tag("error") != null) {
+            return true;
+        }
+        // HTTP server observations record a 5xx without an exception this way
+        String exception = span.tag("exception");
+        return "SERVER_ERROR".equals(span.tag("outcome")) || (exception != null && !"none".equals(exception));
+    }
+
+    private static long durationMicros(MutableSpan span) {
+        if (span.startTimestamp() == 0 || span.finishTimestamp() == 0) {
+            return 0;
+        }
+        return span.finishTimestamp() - span.startTimestamp();
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+        pending.forEach(this::decide);
+    }
+}
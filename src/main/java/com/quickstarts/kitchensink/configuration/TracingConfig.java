@@ -0,0 +1,69 @@
+package com.quickstarts.kitchensink.configuration;
+
+import brave.Tracing;
+import brave.TracingCustomizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationPredicate;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoHandlerContext;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
+
+/**
+ * Tracing of requests down to the Mongo commands they send, sampled at the tail by the
+ * {@link TailSamplingSpanHandler} and exported by the {@link OtlpSpanExporter}.
+ * <p>
+ * Every driver command becomes a span tagged with its collection and command name, added to
+ * all clients through a {@link MongoClientSettingsBuilderCustomizer} like the other driver
+ * listeners. Commands sent outside of any observation, such as the change stream polling of
+ * the member view or the background jobs, are not traced; each would otherwise start a trace
+ * of its own.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "kitchensink.tracing", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(TracingProperties.class)
+public class TracingConfig {
+
+    @Bean
+    public OtlpSpanExporter otlpSpanExporter(TracingProperties properties,
+                                             @Value("${spring.application.name:kitchensink}") String serviceName,
+                                             MeterRegistry meterRegistry) {
+        return new OtlpSpanExporter(properties, serviceName, meterRegistry);
+    }
+
+    @Bean
+    public TailSamplingSpanHandler tailSamplingSpanHandler(TracingProperties properties, OtlpSpanExporter otlpSpanExporter,
+                                                           MeterRegistry meterRegistry) {
+        return new TailSamplingSpanHandler(properties, otlpSpanExporter, meterRegistry);
+    }
+
+    /**
+     * Spans reach the handler even when the head sampler or the caller did not sample the
+     * trace, the decision is taken at the tail.
+     */
+    @Bean
+    public TracingCustomizer alwaysSampleLocalCustomizer() {
+        return Tracing.Builder::alwaysSampleLocal;
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoTracingCustomizer(ObservationRegistry observationRegistry) {
+        return settings -> settings
+                .contextProvider(ContextProviderFactory.create(observationRegistry))
+                .addCommandListener(new MongoObservationCommandListener(observationRegistry));
+    }
+
+    @Bean
+    public ObservationPredicate detachedMongoCommandPredicate() {
+        return (name, context) -> !(context instanceof MongoHandlerContext mongo)
+                || mongo.getRequestContext() == null
+                || mongo.getRequestContext().hasKey(ObservationThreadLocalAccessor.KEY);
+    }
+}
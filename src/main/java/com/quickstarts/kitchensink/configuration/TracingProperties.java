@@ -0,0 +1,48 @@
+package com.quickstarts.kitchensink.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Tail-based trace sampling and span export. Every trace is recorded, and once its root span
+ * has ended the whole trace is kept if it failed, took at least {@code latencyThreshold}, or
+ * falls in the {@code samplePercentage} of the remaining ones.
+ */
+@Data
+@ConfigurationProperties(prefix = "kitchensink.tracing")
+public class TracingProperties {
+
+    public enum Exporter {
+        FILE, OTLP, NONE
+    }
+
+    private boolean enabled = true;
+
+    private Duration latencyThreshold = Duration.ofMillis(500);
+
+    // Share of the fast, successful traces kept as a baseline, in percent
+    private double samplePercentage = 1.0;
+
+    // Spans held while waiting for their trace to end, a trace is decided early beyond it
+    private int maxBufferedSpans = 10_000;
+
+    // Traces whose root span has not ended by then are decided on the spans they have
+    private Duration traceTimeout = Duration.ofSeconds(30);
+
+    private Exporter exporter = Exporter.FILE;
+
+    // OTLP JSON, one export request per line
+    private String file = "traces/spans.jsonl";
+
+    // The OTLP/HTTP traces endpoint of a local collector
+    private String otlpEndpoint = "http://localhost:4318/v1/traces";
+
+    private Duration exportInterval = Duration.ofSeconds(1);
+
+    private int exportBatchSize = 512;
+
+    // Kept spans waiting for export, further spans are dropped
+    private int exportQueueSize = 10_000;
+}
@@ -1,32 +1,70 @@
 package com.quickstarts.kitchensink.controller;
 
 import com.quickstarts.kitchensink.model.LoginRequest;
+import com.quickstarts.kitchensink.model.RefreshRequest;
+import com.quickstarts.kitchensink.service.PasswordHashingExecutor;
 import com.quickstarts.kitchensink.util.JwtUtil;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
+    public static final String REFRESH_TOKEN_HEADER = "X-Refresh-Token";
+
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
+    private final PasswordHashingExecutor passwordHashing;
+    private final UserDetailsService userDetailsService;
 
-    public AuthController(AuthenticationManager authenticationManager, JwtUtil jwtUtil) {
+    public AuthController(AuthenticationManager authenticationManager, JwtUtil jwtUtil,
+                          PasswordHashingExecutor passwordHashing, UserDetailsService userDetailsService) {
         this.authenticationManager = authenticationManager;
         this.jwtUtil = jwtUtil;
+        this.passwordHashing = passwordHashing;
+        this.userDetailsService = userDetailsService;
     }
 
+    /**
+     * Returns an access token, and a refresh token in the {@code X-Refresh-Token} header.
+     */
     @PostMapping("/login")
-    public String login(@RequestBody LoginRequest loginRequest) {
+    public ResponseEntity<String> login(@RequestBody LoginRequest loginRequest) {
 
-        Authentication authentication = authenticationManager.authenticate(
+        // bcrypt runs on its own pool, away from the request threads
+        Authentication authentication = passwordHashing.verify(() -> authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                         loginRequest.getUsername(), loginRequest.getPassword()
                 )
-        );
-        return jwtUtil.generateToken(loginRequest.getUsername());
+        ));
+        return ResponseEntity.ok()
+                .header(REFRESH_TOKEN_HEADER, jwtUtil.generateRefreshToken(authentication.getName()))
+                .body(jwtUtil.generateToken(authentication.getName()));
+    }
+
+    /**
+     * Exchanges a refresh token for a new access token. Only the token signature is checked,
+     * together with the user still being enabled, no password is hashed.
+     */
+    @PostMapping("/refresh")
+    public String refresh(@RequestBody RefreshRequest refreshRequest) {
+        String username = jwtUtil.validateRefreshToken(refreshRequest.getRefreshToken());
+        try {
+            UserDetails user = userDetailsService.loadUserByUsername(username);
+            if (!user.isEnabled() || !user.isAccountNonLocked() || !user.isAccountNonExpired()) {
+                throw new BadCredentialsException("User can no longer log in");
+            }
+        } catch (UsernameNotFoundException e) {
+            throw new BadCredentialsException("User can no longer log in", e);
+        }
+        return jwtUtil.generateToken(username);
     }
 }
@@ -0,0 +1,59 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.model.MemberChange;
+import com.quickstarts.kitchensink.service.MemberChangeFeed;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the member changes of one subscriber as server-sent events, named after the change
+ * type and carrying its sequence as the event id.
+ */
+final class MemberChangeSseSink implements MemberChangeFeed.Sink {
+
+    private final SseEmitter emitter;
+
+    MemberChangeSseSink(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void change(MemberChange change) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(change.sequence()))
+                .name(change.type().name().toLowerCase(Locale.ROOT))
+                .data(change, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void heartbeat() throws IOException {
+        emitter.send(SseEmitter.event().comment("heartbeat"));
+    }
+
+    @Override
+    public void dropped(long lastEventId) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(lastEventId))
+                .name("dropped")
+                .data(Map.of("lastEventId", lastEventId, "reason", "Too far behind, reconnect to resume"),
+                        MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void reset(long lastEventId) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(lastEventId))
+                .name("reset")
+                .data(Map.of("lastEventId", lastEventId, "reason", "Changes to resume from are gone, reload the members"),
+                        MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void close() {
+        emitter.complete();
+    }
+}
@@ -1,9 +1,14 @@
 package com.quickstarts.kitchensink.controller;
 
+import com.quickstarts.kitchensink.configuration.MemberLookupProperties;
 import com.quickstarts.kitchensink.model.Member;
-import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.model.MemberChange;
+import com.quickstarts.kitchensink.model.MemberStats;
+import com.quickstarts.kitchensink.service.IdempotencyStore;
+import com.quickstarts.kitchensink.service.MemberChangeFeed;
 import com.quickstarts.kitchensink.service.MemberService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -12,10 +17,16 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
 @Slf4j
 @RestController
@@ -23,12 +34,14 @@ import java.util.List;
 @Tag(name = "Members APIs", description = "API for managing members")
 public class MemberController {
 
+    @Autowired
+    private MemberService memberService;
 
     @Autowired
-    private MemberRepository memberRepository;
+    private MemberLookupProperties lookupProperties;
 
     @Autowired
-    private MemberService memberService;
+    private IdempotencyStore idempotencyStore;
 
     @PostMapping
     @Operation(summary = "Register a new member", description = "Registers a new member with the provided details")
@@ -38,10 +51,35 @@ public class MemberController {
                             mediaType = "application/json",
                             schema = @Schema(implementation = Member.class)
                     )),
-            @ApiResponse(responseCode = "409", description = "Email already exists"),
-            @ApiResponse(responseCode = "400", description = "Invalid input")
+            @ApiResponse(responseCode = "409", description = "Email already exists, or a request with the same Idempotency-Key is still in progress"),
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key already used for a different member")
     })
-    public ResponseEntity<Member> registerMember(@Valid @RequestBody Member member) {
+    public ResponseEntity<?> registerMember(@Valid @RequestBody Member member,
+                                            @Parameter(description = "Retries carrying the same key get the first response replayed")
+                                            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotencyStore.execute(idempotencyKey, member, () -> register(member),
+                    () -> registered(member));
+        }
+        return register(member);
+    }
+
+    /**
+     * The response for a registration whose earlier attempt failed after the member may have
+     * been saved, found by its email.
+     */
+    private Optional<ResponseEntity<?>> registered(Member member) {
+        Member existing = memberService.findByEmail(member.getEmail());
+        if (existing == null || !Objects.equals(existing.getName(), member.getName())
+                || !Objects.equals(existing.getPhoneNumber(), member.getPhoneNumber())) {
+            return Optional.empty();
+        }
+        log.info("Member already registered by an earlier attempt: {} ", existing);
+        return Optional.of(ResponseEntity.ok(existing));
+    }
+
+    private ResponseEntity<Member> register(Member member) {
         log.info("Registering member: {} ", member);
         Member savedMember = memberService.save(member);
         log.info("Member registered : {} ", member);
@@ -66,7 +104,45 @@ public class MemberController {
     })
     public List<Member> getAllMembers() {
         log.info("Listing all members");
-        return memberRepository.findAllByOrderByNameAsc();
+        return memberService.findAllOrderedByName();
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream member changes", description = "Server-sent events for every registration, update, purge and restore as it happens. "
+            + "Each event id is a sequence number; reconnecting with it in Last-Event-ID replays the changes missed in between")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Event stream of registered, updated, purged and restored events, plus "
+                    + "reset when the changes to resume from are gone and dropped before a subscriber that fell behind is disconnected",
+                    content = @Content(
+                            mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = MemberChange.class)
+                    ))
+    })
+    public SseEmitter streamChanges(@Parameter(description = "Sequence of the last change seen, resumes right after it")
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        // Streams are ended by the heartbeat once they are due, the servlet timeout is only a backstop
+        SseEmitter emitter = new SseEmitter(memberService.changeStreamTimeout().toMillis());
+        MemberChangeFeed.Subscriber subscriber = memberService.subscribeToChanges(lastEventId, new MemberChangeSseSink(emitter));
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        return emitter;
+    }
+
+    @GetMapping("/stats")
+    @Operation(summary = "Member statistics", description = "Total count, registrations per time bucket and the most common email domains")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Successfully retrieved statistics",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = MemberStats.class)
+                    )
+            )
+    })
+    public MemberStats getStatistics() {
+        return memberService.statistics();
     }
 
     @GetMapping("/{id}")
@@ -94,7 +170,7 @@ public class MemberController {
             )
     })
     public ResponseEntity<Member> getMemberById(@PathVariable String id) {
-        return memberRepository.findById(id)
+        return Optional.ofNullable(memberService.findById(id))
                 .map(member -> {
                     log.info("Retrieved member: {}", member);
                     return ResponseEntity.ok(member);
@@ -105,12 +181,59 @@ public class MemberController {
                 });
     }
 
+    @PostMapping("/lookup")
+    @Operation(summary = "Get members by ID", description = "Retrieves up to kitchensink.lookup.max-ids members in one request, in the order asked for. Unknown IDs are left out")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Successfully retrieved members",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = Member.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Too many IDs"
+            )
+    })
+    public ResponseEntity<?> lookupMembers(@RequestBody List<String> ids) {
+        if (ids.size() > lookupProperties.getMaxIds()) {
+            log.info("Rejected lookup of {} members", ids.size());
+            return ResponseEntity.badRequest().body(Map.of("ids", "At most " + lookupProperties.getMaxIds() + " ids per lookup"));
+        }
+        return ResponseEntity.ok(memberService.findAllById(ids));
+    }
 
     @DeleteMapping
-    @Operation(summary = "Delete All members", description = "Used only for testing purposes. It will delete all members")
-    public void deleteAll() {
-        memberRepository.deleteAll();
-        log.warn("All members deleted");
+    @Operation(summary = "Purge members", description = "Deletes all members, or those with an email in the given domain, in the background. "
+            + "Used only for testing purposes. Poll the returned job for its progress")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Purge job queued"),
+            @ApiResponse(responseCode = "400", description = "Empty domain")
+    })
+    public ResponseEntity<Map<String, Object>> purge(@Parameter(description = "Only purge members with an email in this domain")
+                                                     @RequestParam(required = false) String domain) {
+        // An empty domain must not widen into purging everyone
+        if (domain != null && domain.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("domain", "Must not be empty, leave it out to purge all members"));
+        }
+        Map<String, Object> job = memberService.purge(domain);
+        return ResponseEntity.accepted()
+                .location(URI.create("/members/purges/" + job.get("jobId")))
+                .body(job);
+    }
+
+    @GetMapping("/purges/{jobId}")
+    @Operation(summary = "Purge status", description = "Progress of a purge started by DELETE /members")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Purge job found"),
+            @ApiResponse(responseCode = "404", description = "Unknown or forgotten job")
+    })
+    public ResponseEntity<Map<String, Object>> purgeStatus(@PathVariable String jobId) {
+        return memberService.purgeStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
 }
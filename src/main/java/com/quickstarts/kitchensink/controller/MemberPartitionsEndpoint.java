@@ -0,0 +1,32 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.repository.MemberRebalancer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint showing the member partition layout and starting or resuming a rebalance.
+ */
+@Endpoint(id = "memberpartitions")
+public class MemberPartitionsEndpoint {
+
+    private final MemberRebalancer rebalancer;
+
+    public MemberPartitionsEndpoint(MemberRebalancer rebalancer) {
+        this.rebalancer = rebalancer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return rebalancer.status();
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebalance() {
+        rebalancer.start();
+        return rebalancer.status();
+    }
+}
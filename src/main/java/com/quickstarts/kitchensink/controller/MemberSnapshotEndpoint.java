@@ -0,0 +1,51 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.repository.MemberSnapshotter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint taking a snapshot of the members or restoring one, and reporting the
+ * progress and throughput of the last run: {@code POST /actuator/membersnapshot/snapshot} or
+ * {@code /restore} with {@code {"file": "name", "replace": true}}.
+ */
+@Endpoint(id = "membersnapshot")
+public class MemberSnapshotEndpoint {
+
+    private final MemberSnapshotter snapshotter;
+
+    public MemberSnapshotEndpoint(MemberSnapshotter snapshotter) {
+        this.snapshotter = snapshotter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return snapshotter.status();
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> run(@Selector String operation, String file, @Nullable Boolean replace) {
+        boolean started;
+        try {
+            started = switch (operation) {
+                case "snapshot" -> snapshotter.snapshot(file);
+                case "restore" -> snapshotter.restore(file, Boolean.TRUE.equals(replace));
+                default -> throw new IllegalArgumentException("Unknown operation " + operation + ", use snapshot or restore");
+            };
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new WebEndpointResponse<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST.value());
+        }
+        if (!started) {
+            return new WebEndpointResponse<>(Map.of("error", "A snapshot or restore is already running"),
+                    HttpStatus.CONFLICT.value());
+        }
+        return new WebEndpointResponse<>(snapshotter.status(), HttpStatus.ACCEPTED.value());
+    }
+}
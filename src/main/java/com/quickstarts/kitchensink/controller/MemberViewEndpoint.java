@@ -0,0 +1,25 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.service.MemberView;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint showing whether the member view is serving reads and how far behind it is.
+ */
+@Endpoint(id = "memberview")
+public class MemberViewEndpoint {
+
+    private final MemberView memberView;
+
+    public MemberViewEndpoint(MemberView memberView) {
+        this.memberView = memberView;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return memberView.status();
+    }
+}
@@ -0,0 +1,31 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.configuration.SlowCommandRecorder;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the most recent slow Mongo commands, newest first.
+ */
+@Endpoint(id = "slowcommands")
+public class SlowCommandsEndpoint {
+
+    private final SlowCommandRecorder recorder;
+
+    public SlowCommandsEndpoint(SlowCommandRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @ReadOperation
+    public List<SlowCommandRecorder.SlowCommand> slowCommands() {
+        return recorder.slowCommands();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        recorder.clear();
+    }
+}
@@ -0,0 +1,23 @@
+package com.quickstarts.kitchensink.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(description = "A change to the members, as streamed by GET /members/changes")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MemberChange(
+        @Schema(description = "Increases by one per change, resume after it with Last-Event-ID") long sequence,
+        Type type,
+        Instant timestamp,
+        @Schema(description = "The member registered or updated") Member member,
+        @Schema(description = "The email domain purged, absent when all members were") String domain,
+        @Schema(description = "Members deleted by the purge") Long deleted) {
+
+    public enum Type {
+        REGISTERED, UPDATED, PURGED,
+        // The members were replaced from a snapshot, reload them
+        RESTORED
+    }
+}
@@ -0,0 +1,23 @@
+package com.quickstarts.kitchensink.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@Schema(description = "Member statistics, maintained incrementally and reconciled periodically")
+public record MemberStats(
+        @Schema(description = "Total number of members") long total,
+        @Schema(description = "Width of each registration bucket") Duration bucketSize,
+        @Schema(description = "Registrations per bucket, oldest first") List<Bucket> registrations,
+        @Schema(description = "Most common email domains") List<DomainCount> topDomains,
+        @Schema(description = "When the numbers were last reconciled against the database") Instant reconciledAt) {
+
+    public record Bucket(Instant start, long count) {
+    }
+
+    // count may overestimate the true count by at most error
+    public record DomainCount(String domain, long count, long error) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.quickstarts.kitchensink.model;
+
+import lombok.Data;
+
+@Data
+public class RefreshRequest {
+    private String refreshToken;
+}
@@ -0,0 +1,452 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.data.support.ExampleMatcherAccessor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * {@link MemberRepository} kept entirely in memory, for running without a Mongo server.
+ * <p>
+ * Members are held in a hash index on id, a unique index on email and a sorted index on
+ * {@code (name, id)} that serves {@link #findAllByOrderByNameAsc()} without sorting. Reads
+ * are lock free; writes are serialized, appended to a {@link MemberLog} and then applied to
+ * the indexes. The log is replayed on startup and rewritten once most of its records are
+ * superseded.
+ * <p>
+ * Behaves like the Mongo repository: ids are generated ObjectIds, a second member with the
+ * same email (including a second member without one) is rejected with
+ * {@link DuplicateKeyException}, and callers get copies, never the stored instances.
+ */
+@Slf4j
+public class EmbeddedMemberRepository implements MemberRepository, DisposableBean {
+
+    // Mongo indexes a missing email as null, which the unique index allows once
+    private static final String NULL_EMAIL = "\u0000";
+
+    private final Map<String, Member> byId = new ConcurrentHashMap<>();
+    private final Map<String, String> idByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Member> byName = new ConcurrentSkipListSet<>(MemberComparators.BY_NAME);
+    private final Object writeLock = new Object();
+    private final MemberLog memberLog;
+    private final long compactAfterRecords;
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * An in-memory repository that is lost on shutdown.
+     */
+    public EmbeddedMemberRepository() {
+        this.memberLog = null;
+        this.compactAfterRecords = Long.MAX_VALUE;
+        this.flusher = null;
+    }
+
+    /**
+     * A repository persisted to {@code logFile}, replaying it first.
+     *
+     * @param compactAfterRecords the log is compacted when it holds at least this many records
+     *                            and more than twice as many as there are members
+     * @param forceIntervalMillis how often the log is forced to disk, or 0 to force on every write
+     */
+    public EmbeddedMemberRepository(Path logFile, long compactAfterRecords, long forceIntervalMillis) {
+        this.memberLog = new MemberLog(logFile);
+        this.compactAfterRecords = compactAfterRecords;
+        long start = System.nanoTime();
+        memberLog.open(new MemberLog.Replay() {
+            @Override
+            public void put(Member member) {
+                Member previous = byId.put(member.getId(), member);
+                if (previous != null) {
+                    idByEmail.remove(emailKey(previous.getEmail()));
+                }
+                idByEmail.put(emailKey(member.getEmail()), member.getId());
+            }
+
+            @Override
+            public void delete(String id) {
+                Member previous = byId.remove(id);
+                if (previous != null) {
+                    idByEmail.remove(emailKey(previous.getEmail()));
+                }
+            }
+
+            @Override
+            public void clear() {
+                byId.clear();
+                idByEmail.clear();
+            }
+        });
+        // Building the sorted index once is cheaper than maintaining it during replay
+        byName.addAll(byId.values());
+        log.info("Replayed {} member log records into {} members in {} ms", memberLog.records(), byId.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (forceIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "member-log-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::force, forceIntervalMillis, forceIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    @Override
+    public <S extends Member> S save(S member) {
+        synchronized (writeLock) {
+            if (member.getId() == null) {
+                member.setId(new ObjectId().toHexString());
+            }
+            put(member);
+        }
+        return member;
+    }
+
+    @Override
+    public <S extends Member> S insert(S member) {
+        synchronized (writeLock) {
+            if (member.getId() == null) {
+                member.setId(new ObjectId().toHexString());
+            } else if (byId.containsKey(member.getId())) {
+                throw new DuplicateKeyException("E11000 duplicate key error collection: members index: _id_ dup key: { _id: \""
+                        + member.getId() + "\" }");
+            }
+            put(member);
+        }
+        return member;
+    }
+
+    @Override
+    public <S extends Member> List<S> saveAll(Iterable<S> members) {
+        List<S> saved = new ArrayList<>();
+        members.forEach(member -> saved.add(save(member)));
+        return saved;
+    }
+
+    @Override
+    public <S extends Member> List<S> insert(Iterable<S> members) {
+        List<S> inserted = new ArrayList<>();
+        members.forEach(member -> inserted.add(insert(member)));
+        return inserted;
+    }
+
+    @Override
+    public Optional<Member> findById(String id) {
+        return Optional.ofNullable(byId.get(id)).map(EmbeddedMemberRepository::copy);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return byId.containsKey(id);
+    }
+
+    @Override
+    public Member findByEmail(String email) {
+        String id = idByEmail.get(emailKey(email));
+        Member member = id != null ? byId.get(id) : null;
+        return member != null ? copy(member) : null;
+    }
+
+    @Override
+    public List<Member> findAllByOrderByNameAsc() {
+        return byName.stream().map(EmbeddedMemberRepository::copy).toList();
+    }
+
+    @Override
+    public List<Member> findAll() {
+        return byId.values().stream().map(EmbeddedMemberRepository::copy).toList();
+    }
+
+    @Override
+    public List<Member> findAll(Sort sort) {
+        return sorted(byId.values().stream(), sort).map(EmbeddedMemberRepository::copy).toList();
+    }
+
+    @Override
+    public Page<Member> findAll(Pageable pageable) {
+        return page(byId.values().stream(), pageable);
+    }
+
+    @Override
+    public List<Member> findAllById(Iterable<String> ids) {
+        List<Member> found = new ArrayList<>();
+        for (String id : ids) {
+            Member member = byId.get(id);
+            if (member != null) {
+                found.add(copy(member));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return byId.size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        synchronized (writeLock) {
+            if (!byId.containsKey(id)) {
+                return;
+            }
+            if (memberLog != null) {
+                memberLog.delete(id);
+            }
+            Member previous = byId.remove(id);
+            idByEmail.remove(emailKey(previous.getEmail()));
+            byName.remove(previous);
+            compactIfNeeded();
+        }
+    }
+
+    @Override
+    public void delete(Member member) {
+        deleteById(member.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        ids.forEach(this::deleteById);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Member> members) {
+        members.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        synchronized (writeLock) {
+            if (memberLog != null) {
+                memberLog.clear();
+            }
+            byId.clear();
+            idByEmail.clear();
+            byName.clear();
+            compactIfNeeded();
+        }
+    }
+
+    @Override
+    public <S extends Member> Optional<S> findOne(Example<S> example) {
+        return matching(example).findFirst();
+    }
+
+    @Override
+    public <S extends Member> List<S> findAll(Example<S> example) {
+        return matching(example).toList();
+    }
+
+    @Override
+    public <S extends Member> List<S> findAll(Example<S> example, Sort sort) {
+        return sorted(matching(example), sort).toList();
+    }
+
+    @Override
+    public <S extends Member> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return page(matching(example), pageable);
+    }
+
+    @Override
+    public <S extends Member> long count(Example<S> example) {
+        return matching(example).count();
+    }
+
+    @Override
+    public <S extends Member> boolean exists(Example<S> example) {
+        return matching(example).findAny().isPresent();
+    }
+
+    @Override
+    public <S extends Member, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        return queryFunction.apply(new MemberFluentQuery<>(new MemberFluentQuery.Source<S>() {
+            @Override
+            public List<S> find(Sort sort, long offset, int limit) {
+                return sorted(matching(example), sort).skip(offset).limit(limit).toList();
+            }
+
+            @Override
+            public long count() {
+                return EmbeddedMemberRepository.this.count(example);
+            }
+
+            @Override
+            public boolean exists() {
+                return EmbeddedMemberRepository.this.exists(example);
+            }
+        }, example.getProbeType()));
+    }
+
+    /**
+     * Forces logged writes to disk.
+     */
+    public void force() {
+        synchronized (writeLock) {
+            if (memberLog != null) {
+                memberLog.force();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (writeLock) {
+            if (memberLog != null) {
+                memberLog.close();
+            }
+        }
+    }
+
+    private void put(Member member) {
+        String emailKey = emailKey(member.getEmail());
+        String owner = idByEmail.get(emailKey);
+        if (owner != null && !owner.equals(member.getId())) {
+            throw new DuplicateKeyException("E11000 duplicate key error collection: members index: email dup key: { email: \""
+                    + member.getEmail() + "\" }");
+        }
+        Member stored = copy(member);
+        if (memberLog != null) {
+            memberLog.put(stored);
+            if (flusher == null) {
+                memberLog.force();
+            }
+        }
+        Member previous = byId.put(stored.getId(), stored);
+        if (previous != null) {
+            byName.remove(previous);
+            if (!emailKey(previous.getEmail()).equals(emailKey)) {
+                idByEmail.remove(emailKey(previous.getEmail()));
+            }
+        }
+        idByEmail.put(emailKey, stored.getId());
+        byName.add(stored);
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        if (memberLog != null && memberLog.records() >= compactAfterRecords && memberLog.records() > 2L * byId.size()) {
+            memberLog.compact(byId.values());
+        }
+    }
+
+    private <S extends Member> Stream<S> matching(Example<S> example) {
+        ExampleMatcherAccessor matcher = new ExampleMatcherAccessor(example.getMatcher());
+        S probe = example.getProbe();
+        boolean all = example.getMatcher().isAllMatching();
+        return byId.values().stream()
+                .filter(member -> matches(probe, member, matcher, all))
+                .map(member -> example.getProbeType().cast(copy(member)));
+    }
+
+    private static boolean matches(Member probe, Member member, ExampleMatcherAccessor matcher, boolean all) {
+        List<Boolean> results = new ArrayList<>();
+        compare(results, matcher, "id", probe.getId(), member.getId());
+        compare(results, matcher, "name", probe.getName(), member.getName());
+        compare(results, matcher, "email", probe.getEmail(), member.getEmail());
+        compare(results, matcher, "phoneNumber", probe.getPhoneNumber(), member.getPhoneNumber());
+        return all ? !results.contains(false) : results.isEmpty() || results.contains(true);
+    }
+
+    private static void compare(List<Boolean> results, ExampleMatcherAccessor matcher, String path, String expected,
+                                String actual) {
+        if (matcher.isIgnoredPath(path)) {
+            return;
+        }
+        Optional<Object> value = matcher.getValueTransformerForPath(path).apply(Optional.ofNullable(expected));
+        if (value.isEmpty()) {
+            if (matcher.getNullHandler() == ExampleMatcher.NullHandler.INCLUDE) {
+                results.add(actual == null);
+            }
+            return;
+        }
+        // Mongo stores the id as an ObjectId, which string matchers do not apply to
+        ExampleMatcher.StringMatcher stringMatcher = path.equals("id")
+                ? ExampleMatcher.StringMatcher.EXACT : matcher.getStringMatcherForPath(path);
+        results.add(actual != null && matches(value.get().toString(), actual, stringMatcher, matcher.isIgnoreCaseForPath(path)));
+    }
+
+    /**
+     * Matches a string the way Mongo's example mapping does, where a regex is found anywhere
+     * in the value.
+     */
+    private static boolean matches(String expected, String actual, ExampleMatcher.StringMatcher stringMatcher,
+                                   boolean ignoreCase) {
+        if (stringMatcher == ExampleMatcher.StringMatcher.REGEX) {
+            int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            return Pattern.compile(expected, flags).matcher(actual).find();
+        }
+        if (ignoreCase) {
+            expected = expected.toLowerCase(Locale.ROOT);
+            actual = actual.toLowerCase(Locale.ROOT);
+        }
+        return switch (stringMatcher) {
+            case STARTING -> actual.startsWith(expected);
+            case ENDING -> actual.endsWith(expected);
+            case CONTAINING -> actual.contains(expected);
+            default -> actual.equals(expected);
+        };
+    }
+
+    private static <S extends Member> Stream<S> sorted(Stream<S> members, Sort sort) {
+        return sort.isSorted() ? members.sorted(MemberComparators.of(sort)) : members;
+    }
+
+    private static <S extends Member> Page<S> page(Stream<S> members, Pageable pageable) {
+        List<S> all = sorted(members, pageable.getSort()).toList();
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(copies(all), pageable, all.size());
+        }
+        int from = (int) Math.min(pageable.getOffset(), all.size());
+        int to = Math.min(from + pageable.getPageSize(), all.size());
+        return new PageImpl<>(copies(all.subList(from, to)), pageable, all.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S extends Member> List<S> copies(List<S> members) {
+        return members.stream().map(member -> (S) copy(member)).toList();
+    }
+
+    private static String emailKey(String email) {
+        return Objects.requireNonNullElse(email, NULL_EMAIL);
+    }
+
+    private static Member copy(Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setName(member.getName());
+        copy.setEmail(member.getEmail());
+        copy.setPhoneNumber(member.getPhoneNumber());
+        return copy;
+    }
+}
@@ -0,0 +1,89 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Mongo templates of every physical members collection, for jobs that work on the
+ * collections directly rather than through {@link MemberRepository}: one per partition when
+ * partitioning is enabled, otherwise the default template, and none for the embedded store.
+ */
+@Component
+public class MemberCollections {
+
+    private final MemberRepository memberRepository;
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+
+    public MemberCollections(MemberRepository memberRepository, ObjectProvider<MongoTemplate> mongoTemplate) {
+        this.memberRepository = memberRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public List<MongoTemplate> templates() {
+        if (memberRepository instanceof PartitionedMemberRepository partitioned) {
+            return partitioned.partitions().templates();
+        }
+        if (memberRepository instanceof EmbeddedMemberRepository) {
+            return List.of();
+        }
+        MongoTemplate template = mongoTemplate.getIfAvailable();
+        return template != null ? List.of(template) : List.of();
+    }
+
+    /**
+     * The position in {@link #templates()} of the collection the member with {@code id} and
+     * {@code email} belongs in.
+     */
+    public int ownerOf(Object id, String email) {
+        if (memberRepository instanceof PartitionedMemberRepository partitioned) {
+            return partitioned.partitions().ownerOf(id, email);
+        }
+        return 0;
+    }
+
+    /**
+     * The indexes of a members collection as {@code listIndexes} returns them.
+     */
+    public static List<BsonDocument> indexes(MongoTemplate template) {
+        return template.getCollection(template.getCollectionName(Member.class))
+                .listIndexes(BsonDocument.class).into(new ArrayList<>());
+    }
+
+    /**
+     * Creates the given {@link #indexes(MongoTemplate)} on a members collection, for example
+     * after it was dropped. The {@code _id} index always exists and is skipped.
+     */
+    public static void createIndexes(MongoTemplate template, List<BsonDocument> indexes) {
+        createIndexes(template, template.getCollectionName(Member.class), indexes);
+    }
+
+    /**
+     * Creates the given {@link #indexes(MongoTemplate)} on the collection {@code name} of the
+     * template's database.
+     */
+    public static void createIndexes(MongoTemplate template, String name, List<BsonDocument> indexes) {
+        BsonArray specs = new BsonArray();
+        for (BsonDocument index : indexes) {
+            if ("_id_".equals(index.getString("name", new BsonString("")).getValue())) {
+                continue;
+            }
+            BsonDocument spec = index.clone();
+            // Describe the source collection and are rejected by createIndexes
+            spec.remove("v");
+            spec.remove("ns");
+            specs.add(spec);
+        }
+        if (specs.isEmpty()) {
+            return;
+        }
+        template.getDb().runCommand(new BsonDocument("createIndexes", new BsonString(name)).append("indexes", specs));
+    }
+}
@@ -0,0 +1,51 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.springframework.data.domain.Sort;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * In-memory equivalents of the sort orders Mongo applies to members, used wherever sorted
+ * results are produced or merged outside the database. Ties are broken by id so that the
+ * order is total, like a sort on {@code (field, _id)}.
+ */
+public final class MemberComparators {
+
+    public static final Comparator<Member> BY_NAME = of(Sort.by("name"));
+
+    private MemberComparators() {
+    }
+
+    public static Comparator<Member> of(Sort sort) {
+        Comparator<Member> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Member> next = Comparator.comparing(property(order.getProperty()),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        Comparator<Member> byId = Comparator.comparing(Member::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    /**
+     * The sort to send to Mongo so that each partition returns rows in {@link #of(Sort)} order.
+     */
+    public static Sort withIdTieBreak(Sort sort) {
+        return sort.getOrderFor("id") != null ? sort : sort.and(Sort.by("id"));
+    }
+
+    private static Function<Member, String> property(String name) {
+        return switch (name) {
+            case "id" -> Member::getId;
+            case "name" -> Member::getName;
+            case "email" -> Member::getEmail;
+            case "phoneNumber" -> Member::getPhoneNumber;
+            default -> throw new IllegalArgumentException("Cannot sort members by " + name);
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * {@link FluentQuery.FetchableFluentQuery} for the member repositories that find example
+ * matches themselves instead of handing the query to a single Mongo collection. Sorting,
+ * paging and limits are pushed to the {@link Source}; projections and result types are
+ * applied to the members it returns.
+ */
+final class MemberFluentQuery<S extends Member, T> implements FluentQuery.FetchableFluentQuery<T> {
+
+    private static final SpelAwareProxyProjectionFactory PROJECTIONS = new SpelAwareProxyProjectionFactory();
+
+    /**
+     * The members matching an example.
+     */
+    interface Source<S extends Member> {
+
+        /**
+         * The matches in {@link MemberComparators#of(Sort)} order, skipping {@code offset} and
+         * returning at most {@code limit}.
+         */
+        List<S> find(Sort sort, long offset, int limit);
+
+        long count();
+
+        boolean exists();
+    }
+
+    private final Source<S> source;
+    private final Class<T> resultType;
+    private final Sort sort;
+    private final int limit;
+    private final Set<String> properties;
+
+    MemberFluentQuery(Source<S> source, Class<T> resultType) {
+        this(source, resultType, Sort.unsorted(), Integer.MAX_VALUE, Set.of());
+    }
+
+    private MemberFluentQuery(Source<S> source, Class<T> resultType, Sort sort, int limit, Set<String> properties) {
+        this.source = source;
+        this.resultType = resultType;
+        this.sort = sort;
+        this.limit = limit;
+        this.properties = properties;
+    }
+
+    @Override
+    public FluentQuery.FetchableFluentQuery<T> sortBy(Sort sort) {
+        return new MemberFluentQuery<>(source, resultType, this.sort.and(sort), limit, properties);
+    }
+
+    @Override
+    public FluentQuery.FetchableFluentQuery<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        return new MemberFluentQuery<>(source, resultType, sort, limit, properties);
+    }
+
+    @Override
+    public <R> FluentQuery.FetchableFluentQuery<R> as(Class<R> resultType) {
+        return new MemberFluentQuery<>(source, resultType, sort, limit, properties);
+    }
+
+    @Override
+    public FluentQuery.FetchableFluentQuery<T> project(Collection<String> properties) {
+        return new MemberFluentQuery<>(source, resultType, sort, limit, Set.copyOf(properties));
+    }
+
+    @Override
+    public T oneValue() {
+        List<S> found = source.find(sort, 0, 2);
+        if (found.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1);
+        }
+        return found.isEmpty() ? null : map(found.get(0));
+    }
+
+    @Override
+    public T firstValue() {
+        List<S> found = source.find(sort, 0, 1);
+        return found.isEmpty() ? null : map(found.get(0));
+    }
+
+    @Override
+    public List<T> all() {
+        return source.find(sort, 0, limit).stream().map(this::map).toList();
+    }
+
+    @Override
+    public Page<T> page(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            List<T> all = all();
+            return new PageImpl<>(all, pageable, all.size());
+        }
+        List<T> content = source.find(pageable.getSort().and(sort), pageable.getOffset(), pageable.getPageSize())
+                .stream().map(this::map).toList();
+        return PageableExecutionUtils.getPage(content, pageable, source::count);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return all().stream();
+    }
+
+    @Override
+    public long count() {
+        return source.count();
+    }
+
+    @Override
+    public boolean exists() {
+        return source.exists();
+    }
+
+    private T map(S member) {
+        // Like a Mongo projection, the id is always returned
+        if (!properties.isEmpty()) {
+            if (!properties.contains("name")) {
+                member.setName(null);
+            }
+            if (!properties.contains("email")) {
+                member.setEmail(null);
+            }
+            if (!properties.contains("phoneNumber")) {
+                member.setPhoneNumber(null);
+            }
+        }
+        if (resultType.isInstance(member)) {
+            return resultType.cast(member);
+        }
+        if (resultType.isInterface()) {
+            return PROJECTIONS.createProjection(resultType, member);
+        }
+        T result = BeanUtils.instantiateClass(resultType);
+        BeanUtils.copyProperties(member, result);
+        return result;
+    }
+}
@@ -0,0 +1,282 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped append-only log of member changes backing {@link EmbeddedMemberRepository}.
+ * <p>
+ * Layout: an 8 byte header (magic, version) followed by records of
+ * {@code [int length][int crc32c][payload]}. The payload starts with the operation byte;
+ * puts carry the member fields as length-prefixed UTF-8 strings, deletes carry the id. The
+ * mapped region beyond the last record is zero, so replay stops at the first zero length or
+ * at a record whose checksum does not match, which is where a torn write is truncated.
+ * <p>
+ * Writes land in the page cache as soon as they are copied into the mapping and so survive
+ * a process crash; {@link #force()} makes them survive a machine crash as well.
+ * Not thread safe, the repository serializes all calls.
+ */
+@Slf4j
+class MemberLog implements Closeable {
+
+    private static final int MAGIC = 0x4B534D4C;
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int MIN_MAPPING = 1 << 20;
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte CLEAR = 3;
+
+    interface Replay {
+        void put(Member member);
+
+        void delete(String id);
+
+        void clear();
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer mapping;
+    private int position;
+    private long records;
+
+    MemberLog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the log, creating it if needed, and feeds every intact record to {@code replay}.
+     */
+    void open(Replay replay) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            boolean created = !Files.exists(file) || Files.size(file) == 0;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long written = channel.size();
+            map(Math.max(MIN_MAPPING, written));
+            if (created) {
+                mapping.putInt(0, MAGIC).putInt(4, VERSION);
+                position = HEADER;
+                return;
+            }
+            if (mapping.getInt(0) != MAGIC || mapping.getInt(4) != VERSION) {
+                throw new IllegalStateException(file + " is not a member log");
+            }
+            position = HEADER;
+            while (position + 8 <= mapping.capacity()) {
+                int length = mapping.getInt(position);
+                if (length <= 0 || position + 8 + length > mapping.capacity()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                mapping.get(position + 8, payload);
+                if (crc(payload) != mapping.getInt(position + 4)) {
+                    log.warn("Member log {} has a torn record at offset {}, truncating", file, position);
+                    break;
+                }
+                apply(payload, replay);
+                position += 8 + length;
+                records++;
+            }
+            // Clear whatever follows the last good record so it cannot be replayed later
+            if (written > position) {
+                mapping.put(position, new byte[(int) (written - position)]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void put(Member member) {
+        append(encodePut(member));
+    }
+
+    void delete(String id) {
+        Encoder encoder = new Encoder(DELETE);
+        encoder.string(id);
+        append(encoder.bytes());
+    }
+
+    void clear() {
+        append(new byte[]{CLEAR});
+    }
+
+    long records() {
+        return records;
+    }
+
+    long size() {
+        return position;
+    }
+
+    /**
+     * Rewrites the log to contain just a put for each live member.
+     */
+    void compact(Collection<Member> live) {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip();
+            out.write(header);
+            for (Member member : live) {
+                byte[] payload = encodePut(member);
+                ByteBuffer record = ByteBuffer.allocate(8 + payload.length)
+                        .putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            long before = position;
+            channel.close();
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            position = (int) channel.size();
+            records = live.size();
+            map(Math.max(MIN_MAPPING, (long) position * 2));
+            log.info("Compacted member log {} from {} to {} bytes", file, before, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void force() {
+        if (mapping != null) {
+            mapping.force();
+        }
+    }
+
+    /**
+     * Forces the log and trims the unused tail of the mapping from the file.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.truncate(position);
+        channel.close();
+    }
+
+    private void append(byte[] payload) {
+        int needed = 8 + payload.length;
+        if ((long) position + needed > mapping.capacity()) {
+            map(Math.max((long) mapping.capacity() * 2, (long) position + needed));
+        }
+        // Write the payload first and the length last, so a torn append reads as the end of the log
+        mapping.putInt(position + 4, crc(payload));
+        mapping.put(position + 8, payload);
+        mapping.putInt(position, payload.length);
+        position += needed;
+        records++;
+    }
+
+    private void map(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Member log " + file + " is too large to map, compact it");
+        }
+        try {
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void apply(byte[] payload, Replay replay) {
+        Decoder decoder = new Decoder(payload);
+        switch (payload[0]) {
+            case PUT -> {
+                Member member = new Member();
+                member.setId(decoder.string());
+                member.setName(decoder.string());
+                member.setEmail(decoder.string());
+                member.setPhoneNumber(decoder.string());
+                replay.put(member);
+            }
+            case DELETE -> replay.delete(decoder.string());
+            case CLEAR -> replay.clear();
+            default -> throw new IllegalStateException("Unknown member log operation " + payload[0]);
+        }
+    }
+
+    private static byte[] encodePut(Member member) {
+        Encoder encoder = new Encoder(PUT);
+        encoder.string(member.getId());
+        encoder.string(member.getName());
+        encoder.string(member.getEmail());
+        encoder.string(member.getPhoneNumber());
+        return encoder.bytes();
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static final class Encoder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+
+        Encoder(byte operation) {
+            out.write(operation);
+        }
+
+        void string(String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+
+        private void writeInt(int value) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer buffer;
+
+        Decoder(byte[] payload) {
+            buffer = ByteBuffer.wrap(payload, 1, payload.length - 1);
+        }
+
+        String string() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.quickstarts.kitchensink.repository;
+
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps members to partitions by a hash of their email.
+ * <p>
+ * The 40 bit routing key of the email is also embedded in the ids this class generates
+ * (in place of the random bytes of an {@link ObjectId}), followed by a 16 bit check over the
+ * timestamp and key, so a lookup by id can be sent to the owning partition without knowing
+ * the email. Ids generated elsewhere fail the check and carry no routing key, except for one
+ * in 65536 by chance. A member stays with the partition of its id's routing key when its
+ * email changes. Partitions are chosen with jump consistent hashing, which only moves the
+ * keys that have to move when the partition count changes.
+ */
+public final class MemberPartitioner {
+
+    private static final long ROUTING_KEY_MASK = 0xFF_FFFF_FFFFL;
+
+    private static final AtomicInteger COUNTER = new AtomicInteger(new SecureRandom().nextInt());
+
+    private MemberPartitioner() {
+    }
+
+    public static long routingKey(String email) {
+        // FNV-1a followed by the murmur3 finalizer, stable across JVMs unlike String.hashCode
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : email.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash & ROUTING_KEY_MASK;
+    }
+
+    public static int partitionFor(long routingKey, int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive");
+        }
+        long key = routingKey;
+        long bucket = -1;
+        long next = 0;
+        while (next < partitions) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    public static int partitionForEmail(String email, int partitions) {
+        return partitionFor(routingKey(email), partitions);
+    }
+
+    /**
+     * Returns the routing key embedded in an id created by {@link #newId(String)}, or empty
+     * for any other id.
+     */
+    public static OptionalLong routingKeyOf(String id) {
+        if (id == null || !ObjectId.isValid(id)) {
+            return OptionalLong.empty();
+        }
+        byte[] bytes = new ObjectId(id).toByteArray();
+        if (((bytes[9] & 0xff) << 8 | (bytes[10] & 0xff)) != check(bytes)) {
+            return OptionalLong.empty();
+        }
+        long key = 0;
+        for (int i = 4; i < 9; i++) {
+            key = (key << 8) | (bytes[i] & 0xff);
+        }
+        return OptionalLong.of(key);
+    }
+
+    /**
+     * The routing key that places a member: the one in its id when the id was created by
+     * {@link #newId(String)}, otherwise that of its email.
+     */
+    public static long placementKey(Object id, String email) {
+        String hex = id instanceof ObjectId objectId ? objectId.toHexString() : id != null ? id.toString() : null;
+        OptionalLong key = routingKeyOf(hex);
+        return key.isPresent() ? key.getAsLong() : routingKey(email);
+    }
+
+    public static String newId(String email) {
+        long key = routingKey(email);
+        int seconds = (int) (System.currentTimeMillis() / 1000);
+        // Only tells apart ids of the same email created within the same second
+        int counter = COUNTER.getAndIncrement() & 0xFF;
+        byte[] bytes = new byte[12];
+        bytes[0] = (byte) (seconds >>> 24);
+        bytes[1] = (byte) (seconds >>> 16);
+        bytes[2] = (byte) (seconds >>> 8);
+        bytes[3] = (byte) seconds;
+        for (int i = 0; i < 5; i++) {
+            bytes[4 + i] = (byte) (key >>> (8 * (4 - i)));
+        }
+        int check = check(bytes);
+        bytes[9] = (byte) (check >>> 8);
+        bytes[10] = (byte) check;
+        bytes[11] = (byte) counter;
+        return new ObjectId(bytes).toHexString();
+    }
+
+    private static int check(byte[] bytes) {
+        long hash = 0x6b69746368656e73L;
+        for (int i = 0; i < 9; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 29;
+        return (int) (hash >>> 48);
+    }
+}
@@ -0,0 +1,180 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set of Mongo databases that hold the members collection, together with the partition
+ * layout persisted on partition 0.
+ * <p>
+ * While a rebalance is in progress the layout carries both the new and the previous
+ * partition count, so lookups can fall back to where a member lived before the change.
+ */
+@Slf4j
+public class MemberPartitions implements DisposableBean {
+
+    static final String LAYOUT_COLLECTION = "member_partitioning";
+    private static final String LAYOUT_ID = "layout";
+
+    private final List<MongoClient> clients;
+    private final List<MongoTemplate> templates;
+    private final Map<ReadPreference, List<MongoTemplate>> readTemplates = new ConcurrentHashMap<>();
+    private volatile Layout layout;
+
+    public record Layout(int partitions, int previousPartitions) {
+
+        public boolean migrating() {
+            return partitions != previousPartitions;
+        }
+    }
+
+    public MemberPartitions(List<MongoClient> clients, List<MongoTemplate> templates, int partitions) {
+        if (partitions <= 0 || partitions > templates.size()) {
+            throw new IllegalStateException("Partition count " + partitions + " must be between 1 and the "
+                    + templates.size() + " configured databases");
+        }
+        this.clients = clients;
+        this.templates = templates;
+        this.layout = loadLayout(partitions);
+        templates.forEach(template -> template.indexOps(Member.class)
+                .ensureIndex(new Index().on("email", Sort.Direction.ASC).unique().named("email")));
+        log.info("Members partitioned across {} databases, layout {}", templates.size(), layout);
+    }
+
+    public Layout layout() {
+        return layout;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public MongoTemplate template(int partition) {
+        return templates.get(partition);
+    }
+
+    public List<MongoTemplate> templates() {
+        return templates;
+    }
+
+    public List<MongoClient> clients() {
+        return clients;
+    }
+
+    /**
+     * Templates for the same databases that read with the given preference, or the default
+     * templates when {@code readPreference} is {@code null}.
+     */
+    public List<MongoTemplate> templates(ReadPreference readPreference) {
+        if (readPreference == null) {
+            return templates;
+        }
+        return readTemplates.computeIfAbsent(readPreference, preference -> templates.stream()
+                .map(template -> {
+                    MongoTemplate reader = new MongoTemplate(template.getMongoDatabaseFactory(), template.getConverter());
+                    reader.setReadPreference(preference);
+                    return reader;
+                })
+                .toList());
+    }
+
+    public int ownerOf(String email) {
+        return MemberPartitioner.partitionForEmail(email, layout.partitions());
+    }
+
+    public int previousOwnerOf(String email) {
+        return MemberPartitioner.partitionForEmail(email, layout.previousPartitions());
+    }
+
+    /**
+     * The partition a member lives on, by the routing key in its id or else by its email.
+     */
+    public int ownerOf(Object id, String email) {
+        return MemberPartitioner.partitionFor(MemberPartitioner.placementKey(id, email), layout.partitions());
+    }
+
+    public int previousOwnerOf(Object id, String email) {
+        return MemberPartitioner.partitionFor(MemberPartitioner.placementKey(id, email), layout.previousPartitions());
+    }
+
+    Document checkpoint() {
+        Document stored = layoutCollection().find(Filters.eq("_id", LAYOUT_ID)).first();
+        return stored != null ? stored : new Document();
+    }
+
+    void saveCheckpoint(int partition, Object lastId) {
+        layoutCollection().updateOne(Filters.eq("_id", LAYOUT_ID), new Document("$set",
+                new Document("checkpointPartition", partition).append("checkpointId", lastId)));
+    }
+
+    void completeMigration() {
+        Layout completed = new Layout(layout.partitions(), layout.partitions());
+        storeLayout(completed);
+        layout = completed;
+        log.info("Member partition layout is now {}", completed);
+    }
+
+    private Layout loadLayout(int partitions) {
+        Document stored = layoutCollection().find(Filters.eq("_id", LAYOUT_ID)).first();
+        if (stored == null) {
+            Layout initial = new Layout(partitions, partitions);
+            storeLayout(initial);
+            return initial;
+        }
+        int storedPartitions = stored.getInteger("partitions");
+        int storedPrevious = stored.getInteger("previousPartitions", storedPartitions);
+        if (storedPartitions != storedPrevious && storedPartitions != partitions) {
+            throw new IllegalStateException("Rebalance from " + storedPrevious + " to " + storedPartitions
+                    + " partitions has not finished, cannot switch to " + partitions);
+        }
+        if (Math.max(storedPartitions, storedPrevious) > templates.size()) {
+            throw new IllegalStateException("Stored layout needs " + Math.max(storedPartitions, storedPrevious)
+                    + " partitions but only " + templates.size() + " databases are configured");
+        }
+        // A changed partition count keeps the old one until the rebalance has drained it
+        Layout loaded = new Layout(partitions, storedPrevious);
+        if (loaded.migrating()) {
+            log.warn("Member partitions migrating from {} to {}, rebalance required", storedPrevious, partitions);
+        }
+        storeLayout(loaded);
+        return loaded;
+    }
+
+    private void storeLayout(Layout value) {
+        Document document = new Document("_id", LAYOUT_ID)
+                .append("partitions", value.partitions())
+                .append("previousPartitions", value.previousPartitions());
+        Document stored = layoutCollection().find(Filters.eq("_id", LAYOUT_ID)).first();
+        if (stored != null && value.migrating()
+                && stored.getInteger("partitions") == value.partitions()
+                && stored.getInteger("previousPartitions", -1) == value.previousPartitions()) {
+            // Same migration as before a restart: keep its checkpoint so the rebalance resumes
+            document.append("checkpointPartition", stored.get("checkpointPartition"))
+                    .append("checkpointId", stored.get("checkpointId"));
+        }
+        layoutCollection().replaceOne(Filters.eq("_id", LAYOUT_ID), document, new ReplaceOptions().upsert(true));
+    }
+
+    private MongoCollection<Document> layoutCollection() {
+        return templates.get(0).getCollection(LAYOUT_COLLECTION);
+    }
+
+    @Override
+    public void destroy() {
+        clients.forEach(MongoClient::close);
+    }
+}
@@ -0,0 +1,243 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.RenameCollectionOptions;
+import com.mongodb.client.model.Sorts;
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes members in the background, one job at a time in the order they were asked for.
+ * <p>
+ * Purging every member replaces each members collection with an empty one, which costs the
+ * same however many members there are: an empty staging collection gets the indexes first
+ * and is then renamed over the members, so registrations never find the collection without
+ * its unique email index. Purging an email domain deletes the matching members in chunks of
+ * {@code chunkSize} ids taken in {@code _id} order, pausing between chunks so the primary
+ * keeps serving traffic. A {@link MembersPurgedEvent} is published when a job has finished.
+ */
+@Slf4j
+public class MemberPurger implements DisposableBean {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final MemberRepository memberRepository;
+    private final MemberCollections memberCollections;
+    private final ApplicationEventPublisher events;
+    private final int chunkSize;
+    private final Duration pause;
+    private final int retainedJobs;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MemberPurger(MemberRepository memberRepository, MemberCollections memberCollections,
+                        ApplicationEventPublisher events, int chunkSize, Duration pause, int retainedJobs) {
+        this.memberRepository = memberRepository;
+        this.memberCollections = memberCollections;
+        this.events = events;
+        this.chunkSize = chunkSize;
+        this.pause = pause;
+        this.retainedJobs = retainedJobs;
+    }
+
+    /**
+     * Queues a purge of the members whose email is in {@code domain}, or of all members when
+     * it is null, and returns the status of the new job.
+     */
+    public Map<String, Object> start(String domain, String requestedBy) {
+        Job job = new Job(UUID.randomUUID().toString(), domain != null ? domain.toLowerCase(Locale.ROOT) : null, requestedBy);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            // Forget the oldest finished jobs, queued and running ones are always kept
+            Iterator<Job> oldest = jobs.values().iterator();
+            while (jobs.size() > retainedJobs && oldest.hasNext()) {
+                State state = oldest.next().state;
+                if (state == State.COMPLETED || state == State.FAILED) {
+                    oldest.remove();
+                }
+            }
+        }
+        executor.submit(() -> run(job));
+        return job.status();
+    }
+
+    public Optional<Map<String, Object>> status(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId)).map(Job::status);
+        }
+    }
+
+    private void run(Job job) {
+        job.startedAt = Instant.now();
+        job.state = State.RUNNING;
+        State outcome = State.FAILED;
+        try {
+            List<MongoTemplate> templates = memberCollections.templates();
+            if (templates.isEmpty()) {
+                purgeRepository(job);
+            } else if (job.domain == null) {
+                templates.forEach(template -> replaceWithEmpty(job, template));
+            } else {
+                for (MongoTemplate template : templates) {
+                    purgeInChunks(job, template);
+                }
+            }
+            outcome = State.COMPLETED;
+            log.info("Purge {} of {} finished, deleted {} members in {} chunks", job.id,
+                    job.domain != null ? "domain " + job.domain : "all members", job.deleted.get(), job.chunks.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.error = "Interrupted";
+        } catch (RuntimeException e) {
+            job.error = e.getMessage();
+            log.error("Purge {} failed after deleting {} members", job.id, job.deleted.get(), e);
+        }
+        // Also after a failure, some members may have been deleted. The job only reports
+        // finished once the listeners have caught up, so reads after that are consistent.
+        try {
+            events.publishEvent(new MembersPurgedEvent(job.id, job.domain, job.requestedBy, job.deleted.get()));
+        } catch (RuntimeException e) {
+            log.warn("Could not update state derived from the members after purge {}: {}", job.id, e.getMessage());
+        }
+        job.finishedAt = Instant.now();
+        job.state = outcome;
+    }
+
+    private void replaceWithEmpty(Job job, MongoTemplate template) {
+        String name = template.getCollectionName(Member.class);
+        MongoCollection<Document> collection = template.getCollection(name);
+        String stagingName = name + "_purge_" + job.id.replace("-", "");
+        MongoCollection<Document> staging = template.createCollection(stagingName);
+        try {
+            MemberCollections.createIndexes(template, stagingName, MemberCollections.indexes(template));
+            long count = collection.estimatedDocumentCount();
+            staging.renameCollection(new MongoNamespace(template.getDb().getName(), name),
+                    new RenameCollectionOptions().dropTarget(true));
+            job.deleted.addAndGet(count);
+        } catch (RuntimeException e) {
+            staging.drop();
+            throw e;
+        }
+        job.chunks.incrementAndGet();
+    }
+
+    private void purgeInChunks(Job job, MongoTemplate template) throws InterruptedException {
+        MongoCollection<Document> collection = template.getCollection(template.getCollectionName(Member.class));
+        Bson inDomain = Filters.regex("email", "@" + Pattern.quote(job.domain) + "$", "i");
+        Object lastId = null;
+        while (true) {
+            List<Object> ids = collection.find(Filters.and(inDomain, MemberRebalancer.resumeAfter(lastId)))
+                    .projection(Projections.include("_id"))
+                    .sort(Sorts.ascending("_id"))
+                    .limit(chunkSize)
+                    .map(member -> member.get("_id"))
+                    .into(new ArrayList<>());
+            if (ids.isEmpty()) {
+                return;
+            }
+            // The filter is repeated in case a member changed its email since it was read
+            job.deleted.addAndGet(collection.deleteMany(Filters.and(Filters.in("_id", ids), inDomain)).getDeletedCount());
+            job.chunks.incrementAndGet();
+            lastId = ids.get(ids.size() - 1);
+            pause();
+        }
+    }
+
+    /**
+     * The embedded store has no collections, its purge works through the repository.
+     */
+    private void purgeRepository(Job job) throws InterruptedException {
+        if (job.domain == null) {
+            job.deleted.addAndGet(memberRepository.count());
+            memberRepository.deleteAll();
+            job.chunks.incrementAndGet();
+            return;
+        }
+        String suffix = "@" + job.domain;
+        List<String> ids = memberRepository.findAll().stream()
+                .filter(member -> member.getEmail() != null && member.getEmail().toLowerCase(Locale.ROOT).endsWith(suffix))
+                .map(Member::getId)
+                .toList();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + chunkSize));
+            memberRepository.deleteAllById(chunk);
+            job.deleted.addAndGet(chunk.size());
+            job.chunks.incrementAndGet();
+            pause();
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        if (!pause.isZero()) {
+            Thread.sleep(pause.toMillis());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class Job {
+
+        private final String id;
+        private final String domain;
+        private final String requestedBy;
+        private final Instant createdAt = Instant.now();
+        private final AtomicLong deleted = new AtomicLong();
+        private final AtomicLong chunks = new AtomicLong();
+        private volatile State state = State.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private Job(String id, String domain, String requestedBy) {
+            this.id = id;
+            this.domain = domain;
+            this.requestedBy = requestedBy;
+        }
+
+        private Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("jobId", id);
+            status.put("state", state);
+            status.put("domain", domain);
+            status.put("deleted", deleted.get());
+            status.put("chunks", chunks.get());
+            status.put("createdAt", createdAt);
+            status.put("startedAt", startedAt);
+            status.put("finishedAt", finishedAt);
+            status.put("error", error);
+            return status;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves members to their owning partition after the partition count has changed, by the
+ * routing key in their id or, for ids without one, by their email.
+ * <p>
+ * The job runs in the background while the application keeps serving traffic: each member is
+ * copied to its new owner before it is removed from the old one. Until the job finishes, id
+ * lookups consult both owners of the routing key in the id, and ids without one are looked
+ * for on every partition anyway. A member saved meanwhile already lives on its owner, so the
+ * copy never replaces it and the original is only removed while it still matches what was
+ * read. Progress is checkpointed on partition 0 every batch, so a restarted application
+ * continues where the previous run stopped.
+ */
+@Slf4j
+public class MemberRebalancer implements DisposableBean {
+
+    private final MemberPartitions partitions;
+    private final int batchSize;
+    private final Duration pause;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean running;
+    private volatile int currentPartition = -1;
+    private volatile String lastError;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+
+    public MemberRebalancer(MemberPartitions partitions, int batchSize, Duration pause) {
+        this.partitions = partitions;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    public synchronized boolean start() {
+        if (running || !partitions.layout().migrating()) {
+            return false;
+        }
+        running = true;
+        lastError = null;
+        scanned.set(0);
+        moved.set(0);
+        executor.submit(this::run);
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        MemberPartitions.Layout layout = partitions.layout();
+        status.put("partitions", layout.partitions());
+        status.put("previousPartitions", layout.previousPartitions());
+        status.put("migrating", layout.migrating());
+        status.put("running", running);
+        status.put("currentPartition", currentPartition);
+        status.put("scanned", scanned.get());
+        status.put("moved", moved.get());
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private void run() {
+        try {
+            Document checkpoint = partitions.checkpoint();
+            int from = checkpoint.getInteger("checkpointPartition", 0);
+            Object lastId = checkpoint.get("checkpointId");
+            log.info("Rebalancing members from partition {} after id {}", from, lastId);
+            for (int partition = from; partition < partitions.size(); partition++) {
+                currentPartition = partition;
+                drain(partition, lastId);
+                lastId = null;
+                partitions.saveCheckpoint(partition + 1, null);
+            }
+            partitions.completeMigration();
+            log.info("Rebalance finished, scanned {} and moved {} members", scanned.get(), moved.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            log.error("Rebalance stopped, it can be resumed from the last checkpoint", e);
+        } finally {
+            running = false;
+            currentPartition = -1;
+        }
+    }
+
+    private void drain(int partition, Object lastId) throws InterruptedException {
+        String collectionName = partitions.template(partition).getCollectionName(Member.class);
+        MongoCollection<Document> source = partitions.template(partition).getCollection(collectionName);
+        long inBatch = 0;
+        try (MongoCursor<Document> cursor = source.find(resumeAfter(lastId))
+                .sort(Sorts.ascending("_id")).batchSize(batchSize).iterator()) {
+            while (cursor.hasNext()) {
+                Document member = cursor.next();
+                Object id = member.get("_id");
+                int owner = partitions.ownerOf(id, member.getString("email"));
+                if (owner != partition && move(member, partitions.template(owner).getCollection(collectionName))) {
+                    // Only the copy that was read is removed, a member changed since then stays
+                    source.deleteOne(sameContents(member));
+                    moved.incrementAndGet();
+                }
+                scanned.incrementAndGet();
+                if (++inBatch == batchSize) {
+                    inBatch = 0;
+                    partitions.saveCheckpoint(partition, id);
+                    if (!pause.isZero()) {
+                        Thread.sleep(pause.toMillis());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the member on its owner unless the owner already has it. Saves go to the owner
+     * while a rebalance runs, so an existing copy there is newer than the one read here and
+     * must not be overwritten.
+     */
+    private static boolean move(Document member, MongoCollection<Document> target) {
+        try {
+            target.insertOne(member);
+            return true;
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            if (target.find(Filters.eq("_id", member.get("_id"))).first() != null) {
+                return true;
+            }
+            // Another member took the email on the owner, leave this one where it is
+            log.warn("Member {} not moved, its email is registered to another member on the owning partition",
+                    member.get("_id"));
+            return false;
+        }
+    }
+
+    private static Bson sameContents(Document member) {
+        return Filters.and(member.entrySet().stream()
+                .map(field -> Filters.eq(field.getKey(), field.getValue()))
+                .toList());
+    }
+
+    static Bson resumeAfter(Object lastId) {
+        if (lastId == null) {
+            return new Document();
+        }
+        // _id sorts strings before ObjectIds and $gt only compares within one BSON type
+        if (lastId instanceof ObjectId) {
+            return Filters.gt("_id", lastId);
+        }
+        if (lastId instanceof String) {
+            return Filters.or(Filters.gt("_id", lastId), Filters.type("_id", "objectId"));
+        }
+        return new Document();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
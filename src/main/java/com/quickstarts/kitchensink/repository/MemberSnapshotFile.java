@@ -0,0 +1,277 @@
+package com.quickstarts.kitchensink.repository;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The members snapshot file: the collection's documents as raw BSON, grouped into checksummed
+ * chunks, followed by a footer indexing the chunks.
+ * <pre>
+ * header  [int magic][int version]
+ * chunks  BSON documents back to back, each starts with its own int32 length
+ * footer  BSON {documents, indexes: [index specs], chunks: [{offset, length, count, crc}]}
+ * trailer [long footer offset][int footer length][int footer crc32c][int magic]
+ * </pre>
+ * All integers are little endian like BSON's own. A chunk is written once it reaches the
+ * configured size and is the unit restore maps, verifies and inserts. The file is written
+ * under a temporary name and moved into place when complete, so a snapshot that exists is
+ * always whole.
+ */
+public final class MemberSnapshotFile {
+
+    static final int MAGIC = 0x4B53534E;
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 20;
+
+    private MemberSnapshotFile() {
+    }
+
+    /**
+     * One chunk of documents, located by the footer.
+     */
+    public record Chunk(long offset, int length, int count, int crc) {
+    }
+
+    public static Writer create(Path path, int chunkBytes) throws IOException {
+        return new Writer(path, chunkBytes);
+    }
+
+    public static Reader open(Path path) throws IOException {
+        return new Reader(path);
+    }
+
+    public static final class Writer implements Closeable {
+
+        private final Path path;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final int chunkBytes;
+        private final List<Chunk> chunks = new ArrayList<>();
+        private ByteBuffer chunk;
+        private int chunkCount;
+        private long position;
+        private long documents;
+        private boolean finished;
+
+        private Writer(Path path, int chunkBytes) throws IOException {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            this.chunkBytes = chunkBytes;
+            this.chunk = ByteBuffer.allocate(chunkBytes).order(ByteOrder.LITTLE_ENDIAN);
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header);
+        }
+
+        public void write(RawBsonDocument document) throws IOException {
+            ByteBuffer bytes = document.getByteBuffer().asNIO();
+            if (chunk.position() > 0 && bytes.remaining() > chunk.remaining()) {
+                flushChunk();
+            }
+            if (bytes.remaining() > chunk.remaining()) {
+                // A document larger than the chunk size gets a chunk of its own
+                chunk = ByteBuffer.allocate(bytes.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            chunk.put(bytes);
+            chunkCount++;
+            documents++;
+        }
+
+        /**
+         * Writes the footer and moves the snapshot into place.
+         *
+         * @param indexes the collection's index specs, recreated by restore after the load
+         */
+        public void finish(List<BsonDocument> indexes) throws IOException {
+            flushChunk();
+            BsonArray chunkIndex = new BsonArray();
+            for (Chunk written : chunks) {
+                chunkIndex.add(new BsonDocument("offset", new BsonInt64(written.offset()))
+                        .append("length", new BsonInt32(written.length()))
+                        .append("count", new BsonInt32(written.count()))
+                        .append("crc", new BsonInt32(written.crc())));
+            }
+            BsonDocument footer = new BsonDocument("documents", new BsonInt64(documents))
+                    .append("indexes", new BsonArray(new ArrayList<>(indexes)))
+                    .append("chunks", chunkIndex);
+            ByteBuffer footerBytes = new RawBsonDocument(footer, new BsonDocumentCodec()).getByteBuffer().asNIO();
+            long footerOffset = position;
+            int footerLength = footerBytes.remaining();
+            int footerCrc = crc(footerBytes.duplicate());
+            writeFully(footerBytes);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putLong(footerOffset).putInt(footerLength).putInt(footerCrc).putInt(MAGIC).flip();
+            writeFully(trailer);
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        public long documents() {
+            return documents;
+        }
+
+        public long bytes() {
+            return position + chunk.position();
+        }
+
+        private void flushChunk() throws IOException {
+            if (chunkCount == 0) {
+                return;
+            }
+            chunk.flip();
+            int length = chunk.remaining();
+            chunks.add(new Chunk(position, length, chunkCount, crc(chunk.duplicate())));
+            writeFully(chunk);
+            if (chunk.capacity() != chunkBytes) {
+                chunk = ByteBuffer.allocate(chunkBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            chunk.clear();
+            chunkCount = 0;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot through memory mapping. Chunks may be read from several threads.
+     */
+    public static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final long documents;
+        private final List<BsonDocument> indexes = new ArrayList<>();
+        private final List<Chunk> chunks = new ArrayList<>();
+
+        private Reader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < HEADER_BYTES + TRAILER_BYTES) {
+                    throw new IOException(path + " is too short to be a member snapshot");
+                }
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(path + " is not a member snapshot");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException(path + " has unsupported snapshot version " + version);
+                }
+                ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES, TRAILER_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                long footerOffset = trailer.getLong();
+                int footerLength = trailer.getInt();
+                int footerCrc = trailer.getInt();
+                if (trailer.getInt() != MAGIC || footerOffset < HEADER_BYTES
+                        || footerOffset + footerLength != size - TRAILER_BYTES) {
+                    throw new IOException(path + " has no valid footer, the snapshot is incomplete");
+                }
+                MappedByteBuffer footerBytes = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, footerLength);
+                if (crc(footerBytes.duplicate()) != footerCrc) {
+                    throw new IOException(path + " has a corrupt footer");
+                }
+                byte[] footerArray = new byte[footerLength];
+                footerBytes.get(footerArray);
+                BsonDocument footer = new RawBsonDocument(footerArray);
+                this.documents = footer.getInt64("documents").getValue();
+                footer.getArray("indexes").forEach(index -> indexes.add(index.asDocument()));
+                for (BsonValue value : footer.getArray("chunks")) {
+                    BsonDocument chunk = value.asDocument();
+                    chunks.add(new Chunk(chunk.getInt64("offset").getValue(), chunk.getInt32("length").getValue(),
+                            chunk.getInt32("count").getValue(), chunk.getInt32("crc").getValue()));
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public long documents() {
+            return documents;
+        }
+
+        public List<BsonDocument> indexes() {
+            return indexes;
+        }
+
+        public List<Chunk> chunks() {
+            return chunks;
+        }
+
+        /**
+         * Maps and verifies one chunk, returning its documents. They share one array copied out
+         * of the mapping, so the file may be closed while they are still in use.
+         */
+        public List<RawBsonDocument> read(Chunk chunk) throws IOException {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset(), chunk.length());
+            if (crc(mapped.duplicate()) != chunk.crc()) {
+                throw new IOException("Chunk at offset " + chunk.offset() + " is corrupt");
+            }
+            byte[] bytes = new byte[chunk.length()];
+            mapped.get(bytes);
+            List<RawBsonDocument> read = new ArrayList<>(chunk.count());
+            ByteBuffer lengths = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = lengths.getInt(offset);
+                if (length < 5 || offset + length > bytes.length) {
+                    throw new IOException("Chunk at offset " + chunk.offset() + " holds a malformed document");
+                }
+                read.add(new RawBsonDocument(bytes, offset, length));
+                offset += length;
+            }
+            if (read.size() != chunk.count()) {
+                throw new IOException("Chunk at offset " + chunk.offset() + " holds " + read.size()
+                        + " documents instead of " + chunk.count());
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,277 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.InsertManyOptions;
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the members collections to a {@link MemberSnapshotFile} and restores them from one,
+ * in the background like {@link MemberRebalancer}.
+ * <p>
+ * A snapshot reads the collections as they are while it runs, it is not a point-in-time
+ * copy of a collection receiving writes. Restore drops the target collections so the load
+ * runs without secondary indexes, inserts the chunks from several threads with unordered
+ * bulk inserts, routing each member to its partition, and builds the snapshot's indexes
+ * once all data is in. The load bypasses the repositories, a {@link MembersRestoredEvent} is
+ * published once it has ended so that statistics, the change feed and other derived state
+ * catch up.
+ */
+@Slf4j
+public class MemberSnapshotter implements DisposableBean {
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final int FIND_BATCH_SIZE = 1000;
+
+    private final MemberCollections memberCollections;
+    private final Path directory;
+    private final int chunkBytes;
+    private final int restoreThreads;
+    private final ApplicationEventPublisher events;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean running;
+    private volatile String operation;
+    private volatile String file;
+    private volatile String lastError;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long totalDocuments = -1;
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public MemberSnapshotter(MemberCollections memberCollections, ApplicationEventPublisher events, Path directory,
+                             int chunkBytes, int restoreThreads) {
+        this.memberCollections = memberCollections;
+        this.events = events;
+        this.directory = directory;
+        this.chunkBytes = chunkBytes;
+        this.restoreThreads = restoreThreads;
+    }
+
+    /**
+     * Starts writing the members to {@code name} in the snapshot directory, returning false if
+     * a snapshot or restore is already running.
+     */
+    public synchronized boolean snapshot(String name) {
+        Path path = resolve(name);
+        return begin("snapshot", name, () -> writeSnapshot(path));
+    }
+
+    /**
+     * Starts restoring the members from {@code name}. Collections that already hold members
+     * are only replaced when {@code replace} is set.
+     */
+    public synchronized boolean restore(String name, boolean replace) {
+        Path path = resolve(name);
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("No snapshot named " + name);
+        }
+        return begin("restore", name, () -> restoreSnapshot(path, replace));
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running);
+        status.put("operation", operation);
+        status.put("file", file);
+        status.put("documents", documents.get());
+        status.put("totalDocuments", totalDocuments >= 0 ? totalDocuments : null);
+        status.put("bytes", bytes.get());
+        long end = running ? System.nanoTime() : finishedAt;
+        if (operation != null) {
+            double seconds = Math.max(1, end - startedAt) / 1e9;
+            status.put("elapsedMillis", (long) (seconds * 1000));
+            status.put("documentsPerSecond", Math.round(documents.get() / seconds));
+            status.put("megabytesPerSecond", Math.round(bytes.get() / seconds / (1 << 20) * 10) / 10.0);
+        }
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private interface Job {
+        void run() throws Exception;
+    }
+
+    private boolean begin(String operation, String name, Job job) {
+        if (running) {
+            return false;
+        }
+        if (memberCollections.templates().isEmpty()) {
+            throw new IllegalStateException("Snapshots need members stored in Mongo");
+        }
+        running = true;
+        this.operation = operation;
+        this.file = name;
+        this.lastError = null;
+        this.totalDocuments = -1;
+        documents.set(0);
+        bytes.set(0);
+        startedAt = System.nanoTime();
+        executor.submit(() -> {
+            try {
+                job.run();
+                log.info("Member {} of {} finished: {}", operation, name, status());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                log.error("Member {} of {} failed", operation, name, e);
+            } finally {
+                finishedAt = System.nanoTime();
+                running = false;
+            }
+        });
+        return true;
+    }
+
+    private void writeSnapshot(Path path) throws IOException {
+        Files.createDirectories(directory);
+        List<MongoTemplate> templates = memberCollections.templates();
+        List<BsonDocument> indexes = MemberCollections.indexes(templates.get(0));
+        try (MemberSnapshotFile.Writer writer = MemberSnapshotFile.create(path, chunkBytes)) {
+            for (MongoTemplate template : templates) {
+                try (MongoCursor<RawBsonDocument> cursor = collection(template).find().batchSize(FIND_BATCH_SIZE).iterator()) {
+                    while (cursor.hasNext()) {
+                        writer.write(cursor.next());
+                        documents.incrementAndGet();
+                        bytes.set(writer.bytes());
+                    }
+                }
+            }
+            writer.finish(indexes);
+            bytes.set(Files.size(path));
+        }
+    }
+
+    private void restoreSnapshot(Path path, boolean replace) throws Exception {
+        List<MongoTemplate> templates = memberCollections.templates();
+        List<MongoCollection<RawBsonDocument>> targets = templates.stream().map(MemberSnapshotter::collection).toList();
+        try (MemberSnapshotFile.Reader reader = MemberSnapshotFile.open(path)) {
+            totalDocuments = reader.documents();
+            for (MongoCollection<RawBsonDocument> target : targets) {
+                if (!replace && target.estimatedDocumentCount() > 0) {
+                    throw new IllegalStateException("The members collection is not empty, restore with replace to overwrite it");
+                }
+            }
+            // Also drops the indexes, which are cheaper to build once than to maintain per insert
+            targets.forEach(MongoCollection::drop);
+            try {
+                loadChunks(templates, targets, reader);
+            } finally {
+                // Also after a failure, the members were replaced by whatever was loaded
+                publishRestored(path.getFileName().toString());
+            }
+        }
+    }
+
+    private void loadChunks(List<MongoTemplate> templates, List<MongoCollection<RawBsonDocument>> targets,
+                            MemberSnapshotFile.Reader reader) throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(restoreThreads, runnable -> {
+            Thread thread = new Thread(runnable, "member-restore-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> loads = new ArrayList<>();
+            for (MemberSnapshotFile.Chunk chunk : reader.chunks()) {
+                loads.add(pool.submit(() -> {
+                    load(targets, reader.read(chunk));
+                    bytes.addAndGet(chunk.length());
+                    return null;
+                }));
+            }
+            for (Future<?> load : loads) {
+                try {
+                    load.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        templates.forEach(template -> MemberCollections.createIndexes(template, reader.indexes()));
+    }
+
+    private void publishRestored(String name) {
+        try {
+            events.publishEvent(new MembersRestoredEvent(name, documents.get()));
+        } catch (RuntimeException e) {
+            log.warn("Could not update state derived from the members after restoring {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void load(List<MongoCollection<RawBsonDocument>> targets, List<RawBsonDocument> members) {
+        InsertManyOptions unordered = new InsertManyOptions().ordered(false).bypassDocumentValidation(true);
+        if (targets.size() == 1) {
+            targets.get(0).insertMany(members, unordered);
+        } else {
+            List<List<RawBsonDocument>> byOwner = new ArrayList<>();
+            targets.forEach(target -> byOwner.add(new ArrayList<>()));
+            for (RawBsonDocument member : members) {
+                int owner = member.isString("email")
+                        ? memberCollections.ownerOf(idOf(member), member.getString("email").getValue())
+                        : 0;
+                byOwner.get(owner).add(member);
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                if (!byOwner.get(i).isEmpty()) {
+                    targets.get(i).insertMany(byOwner.get(i), unordered);
+                }
+            }
+        }
+        documents.addAndGet(members.size());
+    }
+
+    private static Object idOf(RawBsonDocument member) {
+        BsonValue id = member.get("_id");
+        if (id == null) {
+            return null;
+        }
+        return id.isObjectId() ? id.asObjectId().getValue() : id.isString() ? id.asString().getValue() : null;
+    }
+
+    private Path resolve(String name) {
+        if (name == null || !FILE_NAME.matcher(name).matches() || name.startsWith(".")) {
+            throw new IllegalArgumentException("Snapshot names may only use letters, digits, '.', '_' and '-'");
+        }
+        return directory.resolve(name);
+    }
+
+    private static MongoCollection<RawBsonDocument> collection(MongoTemplate template) {
+        return template.getCollection(template.getCollectionName(Member.class)).withDocumentClass(RawBsonDocument.class);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
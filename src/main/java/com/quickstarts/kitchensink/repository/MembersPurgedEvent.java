@@ -0,0 +1,15 @@
+package com.quickstarts.kitchensink.repository;
+
+/**
+ * Published when a purge job has finished deleting members, so that state derived from the
+ * members can be brought up to date.
+ *
+ * @param domain      the email domain that was purged, or null if all members were
+ * @param requestedBy the client that asked for the purge
+ */
+public record MembersPurgedEvent(String jobId, String domain, String requestedBy, long deleted) {
+
+    public boolean all() {
+        return domain == null;
+    }
+}
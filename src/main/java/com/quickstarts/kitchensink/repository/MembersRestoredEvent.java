@@ -0,0 +1,11 @@
+package com.quickstarts.kitchensink.repository;
+
+/**
+ * Published when a snapshot restore has finished loading members, which it writes to the
+ * collections directly, so that state derived from the members can be rebuilt.
+ *
+ * @param file     the snapshot restored from
+ * @param restored the members loaded, fewer than in the snapshot if the restore failed
+ */
+public record MembersRestoredEvent(String file, long restored) {
+}
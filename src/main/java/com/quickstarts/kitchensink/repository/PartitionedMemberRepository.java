@@ -0,0 +1,362 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.mongodb.ReadPreference;
+import com.quickstarts.kitchensink.model.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * {@link MemberRepository} that spreads members over {@link MemberPartitions} by a hash of
+ * their email. Email and id lookups go straight to the owning partition; sorted listings are
+ * a streaming merge of the per-partition sorted cursors.
+ * <p>
+ * A member stays on the partition of the routing key in its id, also after its email
+ * changed. Ids not created by {@link MemberPartitioner#newId(String)}, such as those from
+ * before partitioning, carry no routing key: those members live with their email's owner
+ * and are looked for on every partition. Email lookups that miss the email's owner look on
+ * the other partitions too, for members whose email changed.
+ */
+@Slf4j
+public class PartitionedMemberRepository implements MemberRepository {
+
+    private final MemberPartitions partitions;
+    private final ReadPreference readPreference;
+
+    public PartitionedMemberRepository(MemberPartitions partitions) {
+        this(partitions, null);
+    }
+
+    private PartitionedMemberRepository(MemberPartitions partitions, ReadPreference readPreference) {
+        this.partitions = partitions;
+        this.readPreference = readPreference;
+    }
+
+    public MemberPartitions partitions() {
+        return partitions;
+    }
+
+    /**
+     * A view of the same partitions whose reads use {@code readPreference}. Writes always go
+     * to the primary.
+     */
+    public PartitionedMemberRepository withReadPreference(ReadPreference readPreference) {
+        return new PartitionedMemberRepository(partitions, readPreference);
+    }
+
+    @Override
+    public <S extends Member> S save(S member) {
+        boolean update = member.getId() != null;
+        int owner = ownerFor(member);
+        S saved = partitions.template(owner).save(member);
+        if (update) {
+            // The member may still be where its previous email or partition count put it
+            Query sameId = query(where("id").is(saved.getId()));
+            candidatesFor(saved.getId()).stream()
+                    .filter(partition -> partition != owner)
+                    .forEach(partition -> partitions.template(partition).remove(sameId, Member.class));
+        }
+        return saved;
+    }
+
+    @Override
+    public <S extends Member> S insert(S member) {
+        return partitions.template(ownerFor(member)).insert(member);
+    }
+
+    @Override
+    public <S extends Member> List<S> saveAll(Iterable<S> members) {
+        List<S> saved = new ArrayList<>();
+        members.forEach(member -> saved.add(save(member)));
+        return saved;
+    }
+
+    @Override
+    public <S extends Member> List<S> insert(Iterable<S> members) {
+        List<S> inserted = new ArrayList<>();
+        members.forEach(member -> inserted.add(insert(member)));
+        return inserted;
+    }
+
+    @Override
+    public Optional<Member> findById(String id) {
+        for (int partition : candidatesFor(id)) {
+            Member member = reader(partition).findById(id, Member.class);
+            if (member != null) {
+                return Optional.of(member);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return findById(id).isPresent();
+    }
+
+    @Override
+    public Member findByEmail(String email) {
+        Query byEmail = query(where("email").is(email));
+        int owner = partitions.ownerOf(email);
+        Member member = reader(owner).findOne(byEmail, Member.class);
+        for (int partition = 0; member == null && partition < partitions.size(); partition++) {
+            if (partition != owner) {
+                member = reader(partition).findOne(byEmail, Member.class);
+            }
+        }
+        return member;
+    }
+
+    @Override
+    public List<Member> findAllByOrderByNameAsc() {
+        return findAll(Sort.by("name"));
+    }
+
+    @Override
+    public List<Member> findAll() {
+        List<Member> members = new ArrayList<>();
+        readers().forEach(template -> members.addAll(template.findAll(Member.class)));
+        return members;
+    }
+
+    @Override
+    public List<Member> findAll(Sort sort) {
+        return merge(new Query(), Member.class, sort, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Page<Member> findAll(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            List<Member> all = findAll(pageable.getSort());
+            return new PageImpl<>(all, pageable, all.size());
+        }
+        List<Member> content = merge(new Query(), Member.class, pageable.getSort(),
+                pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(content, pageable, count());
+    }
+
+    @Override
+    public List<Member> findAllById(Iterable<String> ids) {
+        Map<String, List<Integer>> candidates = new LinkedHashMap<>();
+        Map<Integer, List<String>> byPartition = new HashMap<>();
+        for (String id : ids) {
+            candidates.computeIfAbsent(id, this::candidatesFor).forEach(partition ->
+                    byPartition.computeIfAbsent(partition, unused -> new ArrayList<>()).add(id));
+        }
+        Map<Integer, Map<String, Member>> fetched = new HashMap<>();
+        byPartition.forEach((partition, partitionIds) -> {
+            Map<String, Member> members = new HashMap<>();
+            reader(partition).find(query(where("id").in(partitionIds)), Member.class)
+                    .forEach(member -> members.put(member.getId(), member));
+            fetched.put(partition, members);
+        });
+        // The first candidate is the owner, its copy wins over one not yet removed by a rebalance
+        List<Member> found = new ArrayList<>();
+        candidates.forEach((id, partitionsOfId) -> partitionsOfId.stream()
+                .map(partition -> fetched.get(partition).get(id))
+                .filter(member -> member != null)
+                .findFirst()
+                .ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return readers().stream().mapToLong(template -> template.count(new Query(), Member.class)).sum();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        candidatesFor(id).forEach(partition -> partitions.template(partition).remove(query(where("id").is(id)), Member.class));
+    }
+
+    @Override
+    public void delete(Member member) {
+        deleteById(member.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        List<String> all = new ArrayList<>();
+        ids.forEach(all::add);
+        partitions.templates().forEach(template -> template.remove(query(where("id").in(all)), Member.class));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Member> members) {
+        List<String> ids = new ArrayList<>();
+        members.forEach(member -> ids.add(member.getId()));
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+        partitions.templates().forEach(template -> template.remove(new Query(), Member.class));
+    }
+
+    @Override
+    public <S extends Member> Optional<S> findOne(Example<S> example) {
+        return readers().stream()
+                .map(template -> template.findOne(byExample(example), example.getProbeType()))
+                .filter(member -> member != null)
+                .findFirst();
+    }
+
+    @Override
+    public <S extends Member> List<S> findAll(Example<S> example) {
+        List<S> members = new ArrayList<>();
+        readers().forEach(template -> members.addAll(template.find(byExample(example), example.getProbeType())));
+        return members;
+    }
+
+    @Override
+    public <S extends Member> List<S> findAll(Example<S> example, Sort sort) {
+        return merge(byExample(example), example.getProbeType(), sort, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public <S extends Member> Page<S> findAll(Example<S> example, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            List<S> all = findAll(example, pageable.getSort());
+            return new PageImpl<>(all, pageable, all.size());
+        }
+        List<S> content = merge(byExample(example), example.getProbeType(), pageable.getSort(),
+                pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(content, pageable, count(example));
+    }
+
+    @Override
+    public <S extends Member> long count(Example<S> example) {
+        return readers().stream()
+                .mapToLong(template -> template.count(byExample(example), example.getProbeType()))
+                .sum();
+    }
+
+    @Override
+    public <S extends Member> boolean exists(Example<S> example) {
+        return readers().stream()
+                .anyMatch(template -> template.exists(byExample(example), example.getProbeType()));
+    }
+
+    @Override
+    public <S extends Member, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        return queryFunction.apply(new MemberFluentQuery<>(new MemberFluentQuery.Source<S>() {
+            @Override
+            public List<S> find(Sort sort, long offset, int limit) {
+                return merge(byExample(example), example.getProbeType(), sort, offset, limit);
+            }
+
+            @Override
+            public long count() {
+                return PartitionedMemberRepository.this.count(example);
+            }
+
+            @Override
+            public boolean exists() {
+                return PartitionedMemberRepository.this.exists(example);
+            }
+        }, example.getProbeType()));
+    }
+
+    /**
+     * Gives a new member its id and returns the partition the member belongs on. The unique
+     * email index only covers one partition, so the others are checked where the email may
+     * already be registered: where it lived before a rebalance, and, for a registration or a
+     * member living away from its email's owner, on any partition a member whose email
+     * changed may hold it.
+     */
+    private int ownerFor(Member member) {
+        String email = member.getEmail();
+        boolean registration = member.getId() == null;
+        if (registration) {
+            member.setId(MemberPartitioner.newId(email));
+        }
+        int owner = partitions.ownerOf(member.getId(), email);
+        boolean awayFromEmail = owner != partitions.ownerOf(email);
+        Query sameEmail = query(where("email").is(email).and("id").ne(member.getId()));
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            boolean check = registration || awayFromEmail
+                    || partitions.layout().migrating() && partition == partitions.previousOwnerOf(email);
+            if (partition != owner && check && partitions.template(partition).exists(sameEmail, Member.class)) {
+                throw new DuplicateKeyException("Email " + email + " is already registered");
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * The owner of the routing key in the id and, while a rebalance runs, its previous owner.
+     * Ids without a routing key are looked for on every partition.
+     */
+    private List<Integer> candidatesFor(String id) {
+        OptionalLong key = MemberPartitioner.routingKeyOf(id);
+        if (key.isEmpty()) {
+            return IntStream.range(0, partitions.size()).boxed().toList();
+        }
+        MemberPartitions.Layout layout = partitions.layout();
+        int owner = MemberPartitioner.partitionFor(key.getAsLong(), layout.partitions());
+        if (!layout.migrating()) {
+            return List.of(owner);
+        }
+        int previous = MemberPartitioner.partitionFor(key.getAsLong(), layout.previousPartitions());
+        return owner == previous ? List.of(owner) : List.of(owner, previous);
+    }
+
+    private <S extends Member> List<S> merge(Query filter, Class<S> type, Sort sort, long offset, int limit) {
+        Sort effective = MemberComparators.withIdTieBreak(sort);
+        long perPartition = Math.min(Integer.MAX_VALUE, offset + limit);
+        List<Stream<Member>> sources = new ArrayList<>();
+        for (MongoTemplate template : readers()) {
+            Query query = Query.of(filter).with(effective);
+            if (perPartition < Integer.MAX_VALUE) {
+                query.limit((int) perPartition);
+            }
+            sources.add(template.stream(query, type).map(Member.class::cast));
+        }
+        List<S> result = new ArrayList<>();
+        try (SortedMergeIterator merged = new SortedMergeIterator(sources, MemberComparators.of(sort))) {
+            long skipped = 0;
+            while (merged.hasNext() && result.size() < limit) {
+                Member member = merged.next();
+                if (skipped++ >= offset) {
+                    result.add(type.cast(member));
+                }
+            }
+        }
+        return result;
+    }
+
+    private MongoTemplate reader(int partition) {
+        return partitions.templates(readPreference).get(partition);
+    }
+
+    private List<MongoTemplate> readers() {
+        return partitions.templates(readPreference);
+    }
+
+    private static Query byExample(Example<?> example) {
+        return query(new Criteria().alike(example));
+    }
+}
@@ -0,0 +1,70 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Streaming k-way merge of members that are already sorted per source. Only one row per
+ * source is held in memory. Consecutive rows with the same id are emitted once, which hides
+ * the short window in which a rebalance has copied a member but not yet removed the original.
+ */
+class SortedMergeIterator implements Iterator<Member>, AutoCloseable {
+
+    private final List<Stream<Member>> sources;
+    private final PriorityQueue<Head> heads;
+    private String lastId;
+    private Member next;
+
+    private record Head(Member member, Iterator<Member> rest) {
+    }
+
+    SortedMergeIterator(List<Stream<Member>> sources, Comparator<Member> comparator) {
+        this.sources = sources;
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                (left, right) -> comparator.compare(left.member(), right.member()));
+        for (Stream<Member> source : sources) {
+            advance(source.iterator());
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !heads.isEmpty()) {
+            Head head = heads.poll();
+            advance(head.rest());
+            if (lastId == null || !Objects.equals(lastId, head.member().getId())) {
+                next = head.member();
+                lastId = next.getId();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Member next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Member result = next;
+        next = null;
+        return result;
+    }
+
+    private void advance(Iterator<Member> iterator) {
+        if (iterator.hasNext()) {
+            heads.add(new Head(iterator.next(), iterator));
+        }
+    }
+
+    @Override
+    public void close() {
+        sources.forEach(Stream::close);
+    }
+}
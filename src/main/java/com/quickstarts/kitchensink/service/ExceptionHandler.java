@@ -5,6 +5,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
@@ -54,6 +56,25 @@ class ExceptionHandler {
         return ResponseEntity.status(HttpStatus.CONFLICT).body(responseObj);
     }
 
+    @org.springframework.web.bind.annotation.ExceptionHandler(QueryTimeoutException.class)
+    public ResponseEntity<Map<String, String>> handleQueryTimeoutException(QueryTimeoutException ex) {
+        log.info("Request timed out: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of("timeout", "The request did not finish within its deadline"));
+    }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler(IdempotencyKeyException.class)
+    public ResponseEntity<Map<String, String>> handleIdempotencyKeyException(IdempotencyKeyException ex) {
+        log.info("Idempotency-Key rejected: {}", ex.getMessage());
+        return ResponseEntity.status(ex.getStatus()).body(Map.of("Idempotency-Key", ex.getMessage()));
+    }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<Map<String, String>> handleLoginThrottledException(LoginThrottledException ex) {
+        log.info("Login rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("login", ex.getMessage()));
+    }
 
     @org.springframework.web.bind.annotation.ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -0,0 +1,177 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.ReadPreference;
+import com.quickstarts.kitchensink.configuration.HedgingProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedged member lookups. The lookup is started as usual; if it has not answered by the
+ * observed p95 latency, the same lookup is sent to another replica set member through
+ * {@code kitchensink.hedging.read-preference} and whichever answers first is used. A hedge
+ * that does not find the member does not win, since it may come from a secondary that has
+ * not seen the member yet.
+ * <p>
+ * Only lookups of clients outside their read-your-writes window are hedged.
+ */
+@Slf4j
+@Component
+public class HedgedReads implements DisposableBean {
+
+    private final boolean enabled;
+    private final ReadPreference hedgePreference;
+    private final int minSamples;
+    private final long minDelayNanos;
+    private final double percentile;
+    private final MemberReadRouter memberReadRouter;
+    private final ReadYourWritesTracker readYourWrites;
+    private final Timer latency;
+    private final Counter fired;
+    private final Counter won;
+    // Carries the caller's observation along, so the lookups show up in its trace
+    private final ExecutorService executor = ContextExecutorService.wrap(
+            Executors.newVirtualThreadPerTaskExecutor(), ContextSnapshotFactory.builder().build());
+
+    public HedgedReads(HedgingProperties properties, MemberReadRouter memberReadRouter,
+                       ReadYourWritesTracker readYourWrites, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.hedgePreference = ReadPreference.valueOf(properties.getReadPreference());
+        this.minSamples = properties.getMinSamples();
+        this.minDelayNanos = properties.getMinDelay().toNanos();
+        this.percentile = properties.getPercentile();
+        this.memberReadRouter = memberReadRouter;
+        this.readYourWrites = readYourWrites;
+        this.latency = Timer.builder("kitchensink.members.lookup.latency")
+                .description("Latency of member lookups before any hedge, drives the hedge delay")
+                .publishPercentiles(percentile)
+                .register(meterRegistry);
+        this.fired = Counter.builder("kitchensink.members.hedge.fired")
+                .description("Member lookups that were slow enough to be hedged")
+                .register(meterRegistry);
+        this.won = Counter.builder("kitchensink.members.hedge.won")
+                .description("Hedged member lookups answered by the hedge")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code lookup} against {@code repository}, hedging it if it is slow.
+     */
+    public Optional<Member> findById(MemberRepository repository, String id, Supplier<Optional<Member>> lookup) {
+        MemberRepository hedge = enabled && !readYourWrites.inWindow() ? memberReadRouter.repositoryFor(hedgePreference) : null;
+        if (hedge == null || hedge == repository) {
+            return timed(lookup).get();
+        }
+        RequestDeadline deadline = RequestDeadline.current();
+        CompletableFuture<Optional<Member>> first = CompletableFuture.supplyAsync(
+                () -> RequestDeadline.callWith(deadline, timed(lookup)), executor);
+        long delayNanos = hedgeDelayNanos();
+        if (delayNanos < 0) {
+            return await(first, deadline);
+        }
+        try {
+            return first.get(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Slow, hedge below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Interrupted while waiting for the member lookup");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+        fired.increment();
+        CompletableFuture<Optional<Member>> second = CompletableFuture.supplyAsync(
+                () -> RequestDeadline.callWith(deadline, () -> hedge.findById(id)), executor);
+        CompletableFuture<Optional<Member>> answer = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        first.whenComplete((member, failure) -> {
+            if (failure == null) {
+                answer.complete(member);
+            } else if (pending.decrementAndGet() == 0) {
+                answer.completeExceptionally(failure);
+            }
+        });
+        second.whenComplete((member, failure) -> {
+            if (failure == null && member.isPresent()) {
+                if (answer.complete(member)) {
+                    won.increment();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                // The first lookup failed; a hedge that found nothing does not prove the member is gone
+                first.whenComplete((ignored, firstFailure) -> answer.completeExceptionally(firstFailure));
+            }
+        });
+        return await(answer, deadline);
+    }
+
+    private Supplier<Optional<Member>> timed(Supplier<Optional<Member>> lookup) {
+        return () -> latency.record(lookup);
+    }
+
+    /**
+     * How long to wait before hedging, or -1 while there are too few samples.
+     */
+    private long hedgeDelayNanos() {
+        if (latency.count() < minSamples) {
+            return -1;
+        }
+        for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return Math.max(minDelayNanos, (long) value.value(TimeUnit.NANOSECONDS));
+            }
+        }
+        return -1;
+    }
+
+    private static Optional<Member> await(CompletableFuture<Optional<Member>> future, RequestDeadline deadline) {
+        try {
+            if (deadline == null) {
+                return future.join();
+            }
+            return future.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Request deadline exceeded waiting for the member lookup");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Interrupted while waiting for the member lookup");
+        } catch (ExecutionException | CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable failure) {
+        if (failure instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(failure);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
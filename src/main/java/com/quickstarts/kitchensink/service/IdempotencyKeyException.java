@@ -0,0 +1,19 @@
+package com.quickstarts.kitchensink.service;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * A request whose {@code Idempotency-Key} cannot be honoured: reused with a different body,
+ * malformed, or still being processed elsewhere.
+ */
+@Getter
+public class IdempotencyKeyException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public IdempotencyKeyException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,510 @@
+package com.quickstarts.kitchensink.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Updates;
+import com.quickstarts.kitchensink.configuration.DeadlineProperties;
+import com.quickstarts.kitchensink.configuration.IdempotencyProperties;
+import com.quickstarts.kitchensink.repository.MembersPurgedEvent;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Replays the response of a request repeated with the same {@code Idempotency-Key} instead
+ * of executing it again.
+ * <p>
+ * Keys are scoped to the authenticated client and bound to a fingerprint of the request
+ * body; reusing a key for a different body is rejected with 422. Successful responses are
+ * kept for {@code kitchensink.idempotency.ttl} in a bounded in-memory store and, when
+ * {@code shared} is on, in a Mongo collection with a TTL index so that retries reaching
+ * another instance are replayed too. Failures are not kept, a retry executes again, except
+ * for timeouts and lost connections: the write may have committed anyway, so the key is
+ * marked uncertain and the retry first asks the caller's recovery whether it did.
+ * <p>
+ * A duplicate arriving while the first request is still running waits for its outcome, at
+ * most until its own deadline: on this instance through the in-flight future, across
+ * instances by polling the pending marker the first request claimed in Mongo.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_MILLIS = 50;
+
+    private final ObjectMapper objectMapper;
+    private final long ttlMillis;
+    private final long inProgressWaitMillis;
+    private final long pendingTtlMillis;
+    private final Map<String, Completed> completed;
+    private final Map<String, Uncertain> uncertain;
+    private final Map<String, CompletableFuture<Attempt>> inFlight = new ConcurrentHashMap<>();
+    private final MongoCollection<Document> shared;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * A stored successful response.
+     */
+    private record Completed(String fingerprint, int status, String body, long expiresAt) {
+    }
+
+    /**
+     * A request that failed after its write may have committed.
+     */
+    private record Uncertain(String fingerprint, long expiresAt) {
+    }
+
+    /**
+     * The result of claiming a key in Mongo: a stored response, or the claim itself, which
+     * may have been taken over from an uncertain attempt.
+     */
+    private record Claim(Completed done, boolean afterUncertain) {
+    }
+
+    /**
+     * The outcome of a running request, handed to duplicates that waited for it.
+     */
+    private record Attempt(String fingerprint, ResponseEntity<?> response) {
+    }
+
+    public IdempotencyStore(IdempotencyProperties properties, DeadlineProperties deadlineProperties,
+                            ObjectMapper objectMapper, ObjectProvider<MongoTemplate> mongoTemplate,
+                            MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.ttlMillis = properties.getTtl().toMillis();
+        this.inProgressWaitMillis = properties.getInProgressWait().toMillis();
+        // A claim must outlive the longest request, or a retry would run the action a second time
+        this.pendingTtlMillis = Math.max(inProgressWaitMillis, deadlineProperties.getMaxTimeout().toMillis());
+        this.meterRegistry = meterRegistry;
+        int maxEntries = properties.getMaxEntries();
+        this.completed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Completed> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.uncertain = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Uncertain> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        MongoTemplate template = properties.isShared() ? mongoTemplate.getIfAvailable() : null;
+        if (properties.isShared() && template == null) {
+            log.warn("kitchensink.idempotency.shared is on but there is no Mongo, keeping idempotency keys locally");
+        }
+        this.shared = template != null ? template.getCollection(properties.getCollection()) : null;
+    }
+
+    /**
+     * Runs {@code action} once per key, replaying its response to repeats of the request.
+     *
+     * @param key     the client supplied {@code Idempotency-Key}
+     * @param request the request body, repeats must carry an equal one
+     */
+    public ResponseEntity<?> execute(String key, Object request, Supplier<ResponseEntity<?>> action) {
+        return execute(key, request, action, Optional::empty);
+    }
+
+    /**
+     * Like {@link #execute(String, Object, Supplier)}, for actions whose effect can be found
+     * afterwards.
+     *
+     * @param recovery run instead of {@code action} by the retry of an attempt that failed
+     *                 after its write may have committed; returns the response for the
+     *                 committed write, or empty to run {@code action}
+     */
+    public ResponseEntity<?> execute(String key, Object request, Supplier<ResponseEntity<?>> action,
+                                     Supplier<Optional<ResponseEntity<?>>> recovery) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IdempotencyKeyException(HttpStatus.BAD_REQUEST, "Must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String scoped = currentClient() + ":" + key;
+        String fingerprint = fingerprint(request);
+
+        Completed done = lookup(scoped);
+        if (done != null) {
+            return replay(done, fingerprint);
+        }
+        CompletableFuture<Attempt> mine = new CompletableFuture<>();
+        CompletableFuture<Attempt> running = inFlight.putIfAbsent(scoped, mine);
+        if (running != null) {
+            Attempt attempt = join(running);
+            checkFingerprint(attempt.fingerprint(), fingerprint);
+            count("joined");
+            return ResponseEntity.status(attempt.response().getStatusCode())
+                    .headers(attempt.response().getHeaders())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(attempt.response().getBody());
+        }
+        boolean claimed = false;
+        boolean attempted = false;
+        try {
+            // Finished between the lookup and taking the flight
+            done = lookup(scoped);
+            boolean afterUncertain = false;
+            if (done == null && shared != null) {
+                Claim claim = claim(scoped, fingerprint);
+                done = claim.done();
+                claimed = done == null;
+                afterUncertain = claim.afterUncertain();
+            }
+            if (done != null) {
+                ResponseEntity<?> replay = replay(done, fingerprint);
+                mine.complete(new Attempt(fingerprint, replay));
+                return replay;
+            }
+            afterUncertain |= takeUncertain(scoped, fingerprint);
+            ResponseEntity<?> response = afterUncertain ? recovery.get().orElse(null) : null;
+            if (response != null) {
+                count("recovered");
+            } else {
+                attempted = true;
+                response = action.get();
+                count("executed");
+            }
+            if (response.getStatusCode().is2xxSuccessful()) {
+                store(scoped, new Completed(fingerprint, response.getStatusCode().value(),
+                        objectMapper.writeValueAsString(response.getBody()), System.currentTimeMillis() + ttlMillis));
+                claimed = false;
+            }
+            mine.complete(new Attempt(fingerprint, response));
+            return response;
+        } catch (RuntimeException | Error e) {
+            if (attempted && mayHaveCommitted(e)) {
+                // Keep the key: the retry must not insert the member a second time
+                markUncertain(scoped, fingerprint);
+                claimed = false;
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        } catch (JsonProcessingException e) {
+            mine.completeExceptionally(e);
+            throw new IllegalStateException("Could not store the response for " + HEADER + " " + key, e);
+        } finally {
+            if (claimed) {
+                release(scoped);
+            }
+            inFlight.remove(scoped, mine);
+        }
+    }
+
+    private Completed lookup(String scoped) {
+        synchronized (completed) {
+            Completed done = completed.get(scoped);
+            if (done != null && done.expiresAt() > System.currentTimeMillis()) {
+                return done;
+            }
+            completed.remove(scoped);
+        }
+        if (shared == null) {
+            return null;
+        }
+        Document document = shared.find(Filters.eq("_id", scoped)).first();
+        Completed done = document != null ? completedOf(document) : null;
+        if (done != null) {
+            synchronized (completed) {
+                completed.put(scoped, done);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Claims the key in Mongo for this request. Returns the stored response instead if another
+     * instance completed it, waiting for a claim held by another instance to be resolved.
+     */
+    private Claim claim(String scoped, String fingerprint) {
+        long waitUntilNanos = System.nanoTime() + waitNanos();
+        while (true) {
+            long now = System.currentTimeMillis();
+            try {
+                shared.insertOne(new Document("_id", scoped)
+                        .append("state", "pending")
+                        .append("fingerprint", fingerprint)
+                        .append("expireAt", new Date(now + pendingTtlMillis)));
+                return new Claim(null, false);
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            Document existing = shared.find(Filters.eq("_id", scoped)).first();
+            if (existing == null) {
+                continue;
+            }
+            Completed done = completedOf(existing);
+            if (done != null) {
+                return new Claim(done, false);
+            }
+            checkFingerprint(existing.getString("fingerprint"), fingerprint);
+            Date expireAt = existing.getDate("expireAt");
+            if ("uncertain".equals(existing.getString("state"))) {
+                // Take the key over from the attempt that may have committed, its retry recovers
+                if (shared.updateOne(Filters.and(Filters.eq("_id", scoped), Filters.eq("expireAt", expireAt)),
+                        Updates.combine(Updates.set("state", "pending"),
+                                Updates.set("expireAt", new Date(now + pendingTtlMillis)))).getModifiedCount() == 1) {
+                    return new Claim(null, true);
+                }
+                continue;
+            }
+            if (expireAt != null && expireAt.getTime() < now) {
+                // Left behind by an instance that stopped while running the request, whose
+                // write may have committed before it stopped
+                if (shared.updateOne(Filters.and(Filters.eq("_id", scoped), Filters.eq("expireAt", expireAt)),
+                        Updates.set("expireAt", new Date(now + pendingTtlMillis))).getModifiedCount() == 1) {
+                    return new Claim(null, true);
+                }
+                continue;
+            }
+            long remainingNanos = waitUntilNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                throw stillInProgress();
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdempotencyKeyException(HttpStatus.CONFLICT, "A request with this key is still in progress");
+            }
+        }
+    }
+
+    /**
+     * Remembers that the attempt for {@code scoped} failed after its write may have committed.
+     */
+    private void markUncertain(String scoped, String fingerprint) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        synchronized (completed) {
+            uncertain.put(scoped, new Uncertain(fingerprint, expiresAt));
+        }
+        if (shared == null) {
+            return;
+        }
+        try {
+            shared.replaceOne(Filters.eq("_id", scoped), new Document("_id", scoped)
+                            .append("state", "uncertain")
+                            .append("fingerprint", fingerprint)
+                            .append("expireAt", new Date(expiresAt)),
+                    new ReplaceOptions().upsert(true));
+        } catch (RuntimeException e) {
+            // The claim stays pending and is taken over as uncertain once it expires
+            log.warn("Could not mark idempotency key {} as uncertain: {}", scoped, e.getMessage());
+        }
+    }
+
+    private boolean takeUncertain(String scoped, String fingerprint) {
+        Uncertain previous;
+        synchronized (completed) {
+            previous = uncertain.remove(scoped);
+        }
+        if (previous == null || previous.expiresAt() <= System.currentTimeMillis()) {
+            return false;
+        }
+        checkFingerprint(previous.fingerprint(), fingerprint);
+        return true;
+    }
+
+    private void store(String scoped, Completed done) {
+        synchronized (completed) {
+            completed.put(scoped, done);
+        }
+        if (shared != null) {
+            shared.replaceOne(Filters.eq("_id", scoped), new Document("_id", scoped)
+                            .append("state", "completed")
+                            .append("fingerprint", done.fingerprint())
+                            .append("status", done.status())
+                            .append("body", done.body())
+                            .append("expireAt", new Date(done.expiresAt())),
+                    new ReplaceOptions().upsert(true));
+        }
+    }
+
+    private void release(String scoped) {
+        try {
+            shared.deleteOne(Filters.and(Filters.eq("_id", scoped), Filters.eq("state", "pending")));
+        } catch (RuntimeException e) {
+            log.warn("Could not release idempotency key {}, it expires on its own: {}", scoped, e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the TTL index of the shared collection.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        if (shared == null) {
+            return;
+        }
+        try {
+            shared.createIndex(Indexes.ascending("expireAt"), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+        } catch (RuntimeException e) {
+            log.warn("Could not create the TTL index on the idempotency keys: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets the responses that registered purged members, a retry replaying one would
+     * report a member that no longer exists. Other instances keep their local copies until
+     * they expire.
+     */
+    @EventListener
+    public void onPurged(MembersPurgedEvent event) {
+        Pattern purged = Pattern.compile(event.all() ? "" : "\"email\":\"[^\"]*@" + Pattern.quote(event.domain()) + "\"",
+                Pattern.CASE_INSENSITIVE);
+        synchronized (completed) {
+            completed.values().removeIf(done -> purged.matcher(done.body()).find());
+        }
+        if (shared == null) {
+            return;
+        }
+        try {
+            shared.deleteMany(Filters.and(Filters.eq("state", "completed"), Filters.regex("body", purged)));
+        } catch (RuntimeException e) {
+            log.warn("Could not forget the idempotent responses of purge {}: {}", event.jobId(), e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> replay(Completed done, String fingerprint) {
+        checkFingerprint(done.fingerprint(), fingerprint);
+        count("replayed");
+        return ResponseEntity.status(done.status())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(REPLAYED_HEADER, "true")
+                .body(done.body());
+    }
+
+    private void checkFingerprint(String stored, String fingerprint) {
+        if (!fingerprint.equals(stored)) {
+            count("rejected");
+            throw new IdempotencyKeyException(HttpStatus.UNPROCESSABLE_ENTITY, "Already used for a different request");
+        }
+    }
+
+    private Completed completedOf(Document document) {
+        if (!"completed".equals(document.getString("state"))) {
+            return null;
+        }
+        Date expireAt = document.getDate("expireAt");
+        if (expireAt.getTime() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return new Completed(document.getString("fingerprint"), document.getInteger("status"),
+                document.getString("body"), expireAt.getTime());
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request", e);
+        }
+    }
+
+    /**
+     * Waits for the request running on this instance, no longer than the caller's deadline.
+     */
+    private Attempt join(CompletableFuture<Attempt> running) {
+        try {
+            return running.get(Math.max(0, waitNanos()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw stillInProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyException(HttpStatus.CONFLICT, "A request with this key is still in progress");
+        }
+    }
+
+    /**
+     * How long a duplicate waits for the first request: the in-progress wait, cut short by
+     * the caller's own deadline.
+     */
+    private long waitNanos() {
+        long wait = TimeUnit.MILLISECONDS.toNanos(inProgressWaitMillis);
+        RequestDeadline requestDeadline = RequestDeadline.current();
+        return requestDeadline != null ? Math.min(wait, requestDeadline.remainingNanos()) : wait;
+    }
+
+    /**
+     * The failure for a duplicate that stopped waiting: a timeout when it ran out of its own
+     * deadline, otherwise a conflict.
+     */
+    private RuntimeException stillInProgress() {
+        count("rejected");
+        RequestDeadline requestDeadline = RequestDeadline.current();
+        if (requestDeadline != null && requestDeadline.expired()) {
+            return new DeadlineExceededException("Request deadline exceeded waiting for " + HEADER);
+        }
+        return new IdempotencyKeyException(HttpStatus.CONFLICT, "A request with this key is still in progress");
+    }
+
+    /**
+     * Failures after which the write may still have been applied: the response was lost, not
+     * the request.
+     */
+    private static boolean mayHaveCommitted(Throwable e) {
+        return e instanceof TransientDataAccessException || e instanceof DataAccessResourceFailureException;
+    }
+
+    private void count(String outcome) {
+        Counter.builder("kitchensink.idempotency.requests")
+                .description("Requests carrying an Idempotency-Key by how they were answered")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "";
+    }
+}
@@ -0,0 +1,11 @@
+package com.quickstarts.kitchensink.service;
+
+/**
+ * A login turned away because the password verification queue is full.
+ */
+public class LoginThrottledException extends RuntimeException {
+
+    public LoginThrottledException(String message) {
+        super(message);
+    }
+}
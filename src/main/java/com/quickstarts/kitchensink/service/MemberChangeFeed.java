@@ -0,0 +1,314 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.ChangeFeedProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.model.MemberChange;
+import com.quickstarts.kitchensink.repository.MembersPurgedEvent;
+import com.quickstarts.kitchensink.repository.MembersRestoredEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes member changes to subscribers as they happen, so clients no longer need to poll
+ * {@code GET /members}.
+ * <p>
+ * Every change gets the next sequence number and is kept in a short history. A subscriber
+ * that reconnects with the last sequence it saw gets the changes after it replayed, or a
+ * {@code reset} event when those are no longer in the history and it has to reload the
+ * members. Changes are queued per subscriber and written by a virtual thread that only runs
+ * while the queue has something in it, so an idle subscriber holds no thread. A subscriber
+ * whose queue fills up is sent a {@code dropped} event carrying the sequence to resume after
+ * and disconnected, instead of holding back the others.
+ * <p>
+ * Changes are those made through this instance.
+ */
+@Slf4j
+public class MemberChangeFeed implements DisposableBean {
+
+    /**
+     * Where the events of one subscriber are written, never called from two threads at once.
+     */
+    public interface Sink {
+
+        void change(MemberChange change) throws IOException;
+
+        void heartbeat() throws IOException;
+
+        /**
+         * The subscriber fell too far behind and is disconnected, it may resume after
+         * {@code lastEventId}.
+         */
+        void dropped(long lastEventId) throws IOException;
+
+        /**
+         * The changes the subscriber asked to resume after are no longer known, it should
+         * reload the members and continue after {@code lastEventId}.
+         */
+        void reset(long lastEventId) throws IOException;
+
+        void close();
+    }
+
+    private interface Delivery {
+        void send() throws IOException;
+    }
+
+    private final int subscriberBuffer;
+    private final int historySize;
+    private final Duration historyRetention;
+    private final long heartbeatNanos;
+    private final long streamTimeoutNanos;
+    private final ArrayDeque<MemberChange> history = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Counter dropped;
+    private final ExecutorService deliveries = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-change-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long sequence;
+
+    public MemberChangeFeed(ChangeFeedProperties properties, MeterRegistry meterRegistry) {
+        this.subscriberBuffer = properties.getSubscriberBuffer();
+        this.historySize = properties.getHistorySize();
+        this.historyRetention = properties.getHistoryRetention();
+        this.heartbeatNanos = properties.getHeartbeatInterval().toNanos();
+        this.streamTimeoutNanos = properties.getStreamTimeout().toNanos();
+        Gauge.builder("kitchensink.members.changes.subscribers", subscribers, Set::size)
+                .description("Clients subscribed to the member change stream")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("kitchensink.members.changes.dropped")
+                .description("Subscribers disconnected for falling too far behind")
+                .register(meterRegistry);
+        long heartbeatMillis = Math.max(1, properties.getHeartbeatInterval().toMillis());
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void saved(Member member, boolean registration) {
+        publish(registration ? MemberChange.Type.REGISTERED : MemberChange.Type.UPDATED, member, null, null);
+    }
+
+    @EventListener
+    public void onPurged(MembersPurgedEvent event) {
+        publish(MemberChange.Type.PURGED, null, event.domain(), event.deleted());
+    }
+
+    @EventListener
+    public void onRestored(MembersRestoredEvent event) {
+        publish(MemberChange.Type.RESTORED, null, null, null);
+    }
+
+    private void publish(MemberChange.Type type, Member member, String domain, Long deleted) {
+        // Appending and fanning out under one lock keeps every subscriber's changes in order
+        synchronized (history) {
+            MemberChange change = new MemberChange(++sequence, type, Instant.now(), member, domain, deleted);
+            history.addLast(change);
+            trimHistory();
+            subscribers.forEach(subscriber -> subscriber.offer(change));
+        }
+    }
+
+    /**
+     * How long a stream may stay open before the heartbeat ends it, plus two heartbeats, for
+     * use as the timeout of the connection carrying it.
+     */
+    public Duration streamTimeout() {
+        return Duration.ofNanos(streamTimeoutNanos + 2 * heartbeatNanos);
+    }
+
+    /**
+     * Sends the changes after {@code lastEventId}, or from now on when it is null, to
+     * {@code sink} until the returned subscriber is closed.
+     */
+    public Subscriber subscribe(Long lastEventId, Sink sink) {
+        Subscriber subscriber = new Subscriber(sink);
+        synchronized (history) {
+            trimHistory();
+            if (lastEventId != null) {
+                long oldest = history.isEmpty() ? sequence + 1 : history.peekFirst().sequence();
+                // Older than the history, or a sequence from before a restart
+                if (lastEventId > sequence || lastEventId < oldest - 1) {
+                    subscriber.reset(sequence);
+                } else {
+                    history.stream().filter(change -> change.sequence() > lastEventId).forEach(subscriber::replay);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        subscriber.deliver();
+        return subscriber;
+    }
+
+    private void trimHistory() {
+        Instant expired = Instant.now().minus(historyRetention);
+        while (history.size() > historySize || (!history.isEmpty() && history.peekFirst().timestamp().isBefore(expired))) {
+            history.removeFirst();
+        }
+    }
+
+    private void heartbeat() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (now - subscriber.openedNanos >= streamTimeoutNanos) {
+                subscriber.close();
+            } else {
+                subscriber.heartbeat(now);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        heartbeats.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+        deliveries.shutdownNow();
+    }
+
+    public final class Subscriber {
+
+        private final Sink sink;
+        private final ArrayDeque<MemberChange> queue = new ArrayDeque<>();
+        private final long openedNanos = System.nanoTime();
+        // A replay may exceed the buffer, only changes queued after it count against it
+        private int replayed;
+        private long resetTo = -1;
+        // The first heartbeat commits the response, so the client sees the stream open at once
+        private boolean heartbeat = true;
+        private boolean droppedNow;
+        private boolean closed;
+        private boolean draining;
+        private long lastSent;
+        private long lastSentNanos = System.nanoTime();
+
+        private Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        private synchronized void replay(MemberChange change) {
+            queue.add(change);
+            replayed++;
+        }
+
+        private synchronized void reset(long latest) {
+            resetTo = latest;
+        }
+
+        private void offer(MemberChange change) {
+            synchronized (this) {
+                if (closed || droppedNow) {
+                    return;
+                }
+                if (queue.size() >= subscriberBuffer + replayed) {
+                    droppedNow = true;
+                    queue.clear();
+                    subscribers.remove(this);
+                    dropped.increment();
+                } else {
+                    queue.add(change);
+                }
+            }
+            deliver();
+        }
+
+        private void heartbeat(long now) {
+            synchronized (this) {
+                if (closed || draining || now - lastSentNanos < heartbeatNanos) {
+                    return;
+                }
+                heartbeat = true;
+            }
+            deliver();
+        }
+
+        private void deliver() {
+            synchronized (this) {
+                if (draining || closed) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                deliveries.execute(this::drain);
+            } catch (RuntimeException e) {
+                // Shutting down
+                close();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Delivery next;
+                boolean last = false;
+                synchronized (this) {
+                    if (closed) {
+                        draining = false;
+                        return;
+                    }
+                    if (resetTo >= 0) {
+                        long latest = resetTo;
+                        resetTo = -1;
+                        lastSent = latest;
+                        next = () -> sink.reset(latest);
+                    } else if (!queue.isEmpty()) {
+                        MemberChange change = queue.poll();
+                        replayed = Math.max(0, replayed - 1);
+                        lastSent = change.sequence();
+                        next = () -> sink.change(change);
+                    } else if (droppedNow) {
+                        long resumeAfter = lastSent;
+                        last = true;
+                        next = () -> sink.dropped(resumeAfter);
+                    } else if (heartbeat) {
+                        heartbeat = false;
+                        next = sink::heartbeat;
+                    } else {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    next.send();
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Closing member change subscriber: {}", e.getMessage());
+                    close();
+                    return;
+                }
+                synchronized (this) {
+                    lastSentNanos = System.nanoTime();
+                }
+                if (last) {
+                    close();
+                    return;
+                }
+            }
+        }
+
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                queue.clear();
+            }
+            subscribers.remove(this);
+            sink.close();
+        }
+    }
+}
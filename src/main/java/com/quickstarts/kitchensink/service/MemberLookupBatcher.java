@@ -0,0 +1,181 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Groups single-member lookups into one {@code findAllById}, which the repositories send as a
+ * single {@code $in} query. A lookup is sent right away when no query is running on its
+ * repository. Lookups arriving while one is running are collected and sent together when a
+ * query finishes, or once they have waited the batch window. Lookups are batched per
+ * repository, so reads routed to different read preferences never share a query.
+ */
+public class MemberLookupBatcher implements DisposableBean {
+
+    private static final ContextSnapshotFactory SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final DistributionSummary batchSizes;
+    private final Map<MemberRepository, Batch> pending = new HashMap<>();
+    // Queries in flight per repository, guarded by pending
+    private final Map<MemberRepository, Integer> running = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "member-lookup-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService queries = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final class Batch {
+        private final Map<String, CompletableFuture<Optional<Member>>> lookups = new LinkedHashMap<>();
+        // The query may run until the last of the waiting requests gives up
+        private RequestDeadline deadline;
+        // The query is traced as part of the request that started the batch
+        private ContextSnapshot context;
+    }
+
+    public MemberLookupBatcher(Duration window, int maxBatchSize, MeterRegistry meterRegistry) {
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizes = DistributionSummary.builder("kitchensink.members.lookups.batch.size")
+                .description("Member ids resolved per batched lookup query")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Looks {@code id} up in {@code repository}. While a query is running on the repository,
+     * waits at most the batch window for it to finish and for other lookups to join the next.
+     */
+    public Optional<Member> findById(MemberRepository repository, String id) {
+        if (windowNanos <= 0) {
+            batchSizes.record(1);
+            return repository.findById(id);
+        }
+        CompletableFuture<Optional<Member>> result = null;
+        Batch full = null;
+        synchronized (pending) {
+            Batch batch = pending.get(repository);
+            if (batch == null && !running.containsKey(repository)) {
+                // Nothing to share a query with, sent right away below
+                running.merge(repository, 1, Integer::sum);
+            } else {
+                if (batch == null) {
+                    Batch created = new Batch();
+                    created.deadline = RequestDeadline.current();
+                    created.context = SNAPSHOTS.captureAll();
+                    pending.put(repository, created);
+                    timer.schedule(() -> flush(repository, created), windowNanos, TimeUnit.NANOSECONDS);
+                    batch = created;
+                }
+                batch.deadline = RequestDeadline.latest(batch.deadline, RequestDeadline.current());
+                result = batch.lookups.computeIfAbsent(id, key -> new CompletableFuture<>());
+                if (batch.lookups.size() >= maxBatchSize) {
+                    pending.remove(repository);
+                    running.merge(repository, 1, Integer::sum);
+                    full = batch;
+                }
+            }
+        }
+        if (result == null) {
+            batchSizes.record(1);
+            try {
+                return repository.findById(id);
+            } finally {
+                finished(repository);
+            }
+        }
+        if (full != null) {
+            Batch sent = full;
+            queries.execute(() -> query(repository, sent));
+        }
+        RequestDeadline deadline = RequestDeadline.current();
+        try {
+            if (deadline == null) {
+                return result.join();
+            }
+            return result.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Request deadline exceeded waiting for the member lookup");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Interrupted while waiting for the member lookup");
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void flush(MemberRepository repository, Batch batch) {
+        synchronized (pending) {
+            // Already sent because it filled up
+            if (!pending.remove(repository, batch)) {
+                return;
+            }
+            running.merge(repository, 1, Integer::sum);
+        }
+        queries.execute(() -> query(repository, batch));
+    }
+
+    /**
+     * Called as a query on {@code repository} finishes, sends the lookups that waited for it.
+     */
+    private void finished(MemberRepository repository) {
+        Batch next;
+        synchronized (pending) {
+            running.computeIfPresent(repository, (key, count) -> count > 1 ? count - 1 : null);
+            next = pending.remove(repository);
+            if (next == null) {
+                return;
+            }
+            running.merge(repository, 1, Integer::sum);
+        }
+        queries.execute(() -> query(repository, next));
+    }
+
+    private void query(MemberRepository repository, Batch batch) {
+        List<String> ids = new ArrayList<>(batch.lookups.keySet());
+        batchSizes.record(ids.size());
+        try (ContextSnapshot.Scope scope = batch.context.setThreadLocals()) {
+            Map<String, Member> found = new HashMap<>();
+            RequestDeadline.callWith(batch.deadline, () -> repository.findAllById(ids))
+                    .forEach(member -> found.put(member.getId(), member));
+            batch.lookups.forEach((id, lookup) -> lookup.complete(Optional.ofNullable(found.get(id))));
+        } catch (RuntimeException | Error e) {
+            batch.lookups.values().forEach(lookup -> lookup.completeExceptionally(e));
+        } finally {
+            finished(repository);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        queries.shutdownNow();
+    }
+}
@@ -0,0 +1,9 @@
+package com.quickstarts.kitchensink.service;
+
+/**
+ * Member reads that can be routed independently, see {@link MemberReadRouter}.
+ */
+public enum MemberReadOperation {
+    LIST,
+    GET
+}
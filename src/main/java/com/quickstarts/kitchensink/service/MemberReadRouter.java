@@ -0,0 +1,99 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.ReadPreference;
+import com.quickstarts.kitchensink.configuration.ReadRoutingProperties;
+import com.quickstarts.kitchensink.repository.EmbeddedMemberRepository;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.repository.PartitionedMemberRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the repository a member read goes through. Reads configured in
+ * {@link ReadRoutingProperties} use their read preference, except for clients inside their
+ * read-your-writes window, which stay on the primary together with all writes.
+ */
+@Slf4j
+@Component
+public class MemberReadRouter {
+
+    private final MemberRepository memberRepository;
+    private final ObjectProvider<MongoDatabaseFactory> mongoDatabaseFactory;
+    private final ObjectProvider<MongoConverter> mongoConverter;
+    private final ReadYourWritesTracker readYourWrites;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Map<MemberReadOperation, ReadPreference> routes = new EnumMap<>(MemberReadOperation.class);
+    private final Map<ReadPreference, MemberRepository> repositories = new ConcurrentHashMap<>();
+
+    public MemberReadRouter(MemberRepository memberRepository, ObjectProvider<MongoDatabaseFactory> mongoDatabaseFactory,
+                            ObjectProvider<MongoConverter> mongoConverter, ReadYourWritesTracker readYourWrites,
+                            MeterRegistry meterRegistry, ReadRoutingProperties properties) {
+        this.memberRepository = memberRepository;
+        this.mongoDatabaseFactory = mongoDatabaseFactory;
+        this.mongoConverter = mongoConverter;
+        this.readYourWrites = readYourWrites;
+        this.meterRegistry = meterRegistry;
+        this.enabled = properties.isEnabled();
+        properties.getOperations().forEach((operation, route) -> routes.put(operation, route.toReadPreference()));
+        if (enabled) {
+            log.info("Member reads routed as {}", routes);
+        }
+    }
+
+    public MemberRepository repositoryFor(MemberReadOperation operation) {
+        ReadPreference preference = enabled ? routes.get(operation) : null;
+        if (preference == null || ReadPreference.primary().equals(preference)) {
+            return memberRepository;
+        }
+        if (readYourWrites.inWindow()) {
+            routed(operation, "primary-read-your-writes").increment();
+            return memberRepository;
+        }
+        routed(operation, preference.getName()).increment();
+        return repositoryFor(preference);
+    }
+
+    /**
+     * A repository over the same data whose reads use {@code preference}.
+     */
+    public MemberRepository repositoryFor(ReadPreference preference) {
+        return repositories.computeIfAbsent(preference, this::createRepository);
+    }
+
+    private MemberRepository createRepository(ReadPreference preference) {
+        if (memberRepository instanceof PartitionedMemberRepository partitioned) {
+            return partitioned.withReadPreference(preference);
+        }
+        if (memberRepository instanceof EmbeddedMemberRepository) {
+            return memberRepository;
+        }
+        MongoDatabaseFactory factory = mongoDatabaseFactory.getIfAvailable();
+        if (factory == null) {
+            // Not backed by Mongo, there is nothing to route
+            return memberRepository;
+        }
+        MongoTemplate template = new MongoTemplate(factory, mongoConverter.getObject());
+        template.setReadPreference(preference);
+        return new MongoRepositoryFactory(template).getRepository(MemberRepository.class);
+    }
+
+    private Counter routed(MemberReadOperation operation, String target) {
+        return Counter.builder("kitchensink.members.reads.routed")
+                .description("Member reads by the read preference they were routed to")
+                .tag("operation", operation.name().toLowerCase())
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+}
@@ -17,41 +17,160 @@
 package com.quickstarts.kitchensink.service;
 
 import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.model.MemberStats;
+import com.quickstarts.kitchensink.repository.MemberPurger;
 import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.SingleFlight;
+import io.micrometer.observation.annotation.Observed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
 @Service
 @Slf4j
+@Observed(name = "kitchensink.members.service")
 public class MemberService {
 
     @Autowired
     private MemberRepository memberRepository;
 
-    @Transactional
+    @Autowired
+    private MemberReadRouter memberReadRouter;
+
+    @Autowired
+    private ReadYourWritesTracker readYourWrites;
+
+    @Autowired
+    private MemberStatistics memberStatistics;
+
+    @Autowired
+    private MemberLookupBatcher memberLookupBatcher;
+
+    @Autowired
+    private HedgedReads hedgedReads;
+
+    @Autowired
+    private MemberPurger memberPurger;
+
+    @Autowired
+    private MemberChangeFeed memberChangeFeed;
+
+    private final SingleFlight<LookupKey, Optional<Member>> lookups = new SingleFlight<>();
+
+    // Lookups only share a query when they would have been sent to the same repository
+    private record LookupKey(MemberRepository repository, String id) {
+    }
+
+    // Only present with kitchensink.member-view.enabled=true
+    @Autowired(required = false)
+    private MemberView memberView;
+
     public Member save(Member dbMember) {
         log.info("Saving member {} ", dbMember);
+        boolean registration = dbMember.getId() == null;
         Member savedDbMember = memberRepository.save(dbMember);
+        readYourWrites.recordWrite();
+        if (registration) {
+            memberStatistics.recordRegistration(savedDbMember);
+        }
+        memberChangeFeed.saved(savedDbMember, registration);
         log.info("Saved member {} ", dbMember);
         return savedDbMember;
     }
 
     public List<Member> findAllOrderedByName() {
-        return memberRepository.findAllByOrderByNameAsc();
+        if (useMemberView()) {
+            return memberView.findAllOrderedByName();
+        }
+        return memberReadRouter.repositoryFor(MemberReadOperation.LIST).findAllByOrderByNameAsc();
     }
 
     public Member findById(String id) {
-        return memberRepository.findById(id).orElse(null);
+        if (useMemberView()) {
+            return memberView.findById(id).orElse(null);
+        }
+        MemberRepository repository = memberReadRouter.repositoryFor(MemberReadOperation.GET);
+        return lookups.execute(new LookupKey(repository, id), () -> hedgedReads.findById(repository, id,
+                () -> memberLookupBatcher.findById(repository, id))).orElse(null);
+    }
+
+    /**
+     * The member registered with {@code email}, read from the primary so that a registration
+     * that just committed is seen.
+     */
+    public Member findByEmail(String email) {
+        return memberRepository.findByEmail(email);
+    }
+
+    /**
+     * The members with the given ids in the order asked for, skipping ids that do not exist.
+     */
+    public List<Member> findAllById(Collection<String> ids) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Member> found = useMemberView() ? memberView.findAllById(distinct)
+                : memberReadRouter.repositoryFor(MemberReadOperation.GET).findAllById(distinct);
+        Map<String, Member> byId = new HashMap<>();
+        found.forEach(member -> byId.put(member.getId(), member));
+        return distinct.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Starts deleting the members of an email domain, or all members when {@code domain} is
+     * null, in the background.
+     *
+     * @return the status of the purge job
+     */
+    public Map<String, Object> purge(String domain) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Map<String, Object> job = memberPurger.start(domain, authentication != null ? authentication.getName() : "");
+        log.warn("Purge {} of {} started", job.get("jobId"), domain != null ? "domain " + domain : "all members");
+        return job;
+    }
+
+    public Optional<Map<String, Object>> purgeStatus(String jobId) {
+        return memberPurger.status(jobId);
+    }
+
+    /**
+     * Sends member changes to {@code sink}, resuming after {@code lastEventId} when it is given.
+     */
+    public MemberChangeFeed.Subscriber subscribeToChanges(Long lastEventId, MemberChangeFeed.Sink sink) {
+        return memberChangeFeed.subscribe(lastEventId, sink);
+    }
+
+    /**
+     * How long a connection carrying member changes may stay open.
+     */
+    public Duration changeStreamTimeout() {
+        return memberChangeFeed.streamTimeout();
+    }
+
+    public MemberStats statistics() {
+        return memberStatistics.snapshot();
     }
 
-    @Transactional
-    public void deleteAll() {
-        log.warn("Deleting all members");
-        memberRepository.deleteAll();
+    // Clients that have just written read from Mongo until the view has caught up with them
+    private boolean useMemberView() {
+        if (memberView == null) {
+            return false;
+        }
+        if (memberView.serving() && !readYourWrites.inWindow()) {
+            return true;
+        }
+        memberView.fellBack();
+        return false;
     }
 
 }
@@ -0,0 +1,174 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.MemberStatisticsProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.model.MemberStats;
+import com.quickstarts.kitchensink.util.SpaceSavingSketch;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Member counts kept up to date by {@link MemberService} as members are registered and
+ * deleted, so reading them never touches the database. {@link MemberStatisticsReconciler}
+ * periodically replaces them with exact numbers, which also brings in registrations made
+ * through other instances.
+ */
+@Component
+public class MemberStatistics {
+
+    // Bounds the registrations remembered while reconciliations fail, older ones are only in the totals
+    private static final int MAX_SINCE_MARK = 100_000;
+
+    private final long bucketMillis;
+    private final int topDomains;
+    private final long[] bucketEpochs;
+    private final long[] bucketCounts;
+    private final SpaceSavingSketch domains;
+    // Bucket of each registration a running reconciliation has not counted yet
+    private final Deque<Registration> sinceMark = new ArrayDeque<>();
+    private long total;
+    private long registrations;
+    private long generation;
+    private Instant reconciledAt;
+
+    /**
+     * Position of the incremental updates when a reconciliation started.
+     */
+    public record Mark(long registrations, long generation) {
+    }
+
+    private record Registration(long sequence, long epoch) {
+    }
+
+    public MemberStatistics(MemberStatisticsProperties properties) {
+        this.bucketMillis = properties.getBucketSize().toMillis();
+        this.topDomains = properties.getTopDomains();
+        this.bucketEpochs = new long[properties.getBucketCount()];
+        this.bucketCounts = new long[properties.getBucketCount()];
+        this.domains = new SpaceSavingSketch(properties.getSketchCapacity());
+        Arrays.fill(bucketEpochs, -1);
+    }
+
+    public synchronized void recordRegistration(Member member) {
+        total++;
+        registrations++;
+        long epoch = registeredAt(member) / bucketMillis;
+        addToBucket(epoch, 1);
+        sinceMark.addLast(new Registration(registrations, epoch));
+        if (sinceMark.size() > MAX_SINCE_MARK) {
+            sinceMark.removeFirst();
+        }
+        String domain = domainOf(member.getEmail());
+        if (domain != null) {
+            domains.add(domain, 1);
+        }
+    }
+
+    public synchronized void recordDeleteAll() {
+        total = 0;
+        generation++;
+        sinceMark.clear();
+        Arrays.fill(bucketEpochs, -1);
+        Arrays.fill(bucketCounts, 0);
+        domains.clear();
+    }
+
+    public synchronized Mark mark() {
+        return new Mark(registrations, generation);
+    }
+
+    /**
+     * Replaces the counters with the results of an aggregation that started at {@code mark}.
+     * Registrations recorded since then are added on top; if all members were deleted in the
+     * meantime the results are stale and dropped.
+     *
+     * @param bucketTotals registrations keyed by bucket start in epoch milliseconds
+     * @param domainTotals exact counts of the most common domains
+     */
+    public synchronized boolean reconcile(Mark mark, long memberTotal, Map<Long, Long> bucketTotals,
+                                          Map<String, Long> domainTotals) {
+        if (mark.generation() != generation) {
+            return false;
+        }
+        total = memberTotal + registrations - mark.registrations();
+        Arrays.fill(bucketEpochs, -1);
+        Arrays.fill(bucketCounts, 0);
+        bucketTotals.forEach((start, count) -> addToBucket(start / bucketMillis, count));
+        // Counted by the aggregation, later reconciliations start from a newer mark
+        while (!sinceMark.isEmpty() && sinceMark.peekFirst().sequence() <= mark.registrations()) {
+            sinceMark.removeFirst();
+        }
+        sinceMark.forEach(registration -> addToBucket(registration.epoch(), 1));
+        domains.clear();
+        domainTotals.forEach(domains::add);
+        reconciledAt = Instant.now();
+        return true;
+    }
+
+    public synchronized MemberStats snapshot() {
+        long current = System.currentTimeMillis() / bucketMillis;
+        List<MemberStats.Bucket> buckets = new ArrayList<>();
+        for (long epoch = current - bucketEpochs.length + 1; epoch <= current; epoch++) {
+            int slot = slot(epoch);
+            long count = bucketEpochs[slot] == epoch ? bucketCounts[slot] : 0;
+            buckets.add(new MemberStats.Bucket(Instant.ofEpochMilli(epoch * bucketMillis), count));
+        }
+        List<MemberStats.DomainCount> top = domains.top(topDomains).stream()
+                .map(entry -> new MemberStats.DomainCount(entry.item(), entry.count(), entry.error()))
+                .toList();
+        return new MemberStats(total, Duration.ofMillis(bucketMillis), buckets, top, reconciledAt);
+    }
+
+    /**
+     * Start of the oldest bucket that is still reported, in epoch milliseconds.
+     */
+    public long windowStart() {
+        return (System.currentTimeMillis() / bucketMillis - bucketEpochs.length + 1) * bucketMillis;
+    }
+
+    public long bucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * When a member was registered, taken from the timestamp of its ObjectId like the
+     * reconciliation does, or now for other ids.
+     */
+    static long registeredAt(Member member) {
+        String id = member.getId();
+        return id != null && ObjectId.isValid(id) ? new ObjectId(id).getDate().getTime() : System.currentTimeMillis();
+    }
+
+    static String domainOf(String email) {
+        if (email == null || email.indexOf('@') < 0) {
+            return null;
+        }
+        return email.substring(email.lastIndexOf('@') + 1).toLowerCase();
+    }
+
+    private void addToBucket(long epoch, long count) {
+        long current = System.currentTimeMillis() / bucketMillis;
+        if (epoch <= current - bucketEpochs.length || epoch > current) {
+            return;
+        }
+        int slot = slot(epoch);
+        if (bucketEpochs[slot] != epoch) {
+            bucketEpochs[slot] = epoch;
+            bucketCounts[slot] = 0;
+        }
+        bucketCounts[slot] += count;
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) bucketEpochs.length);
+    }
+}
@@ -0,0 +1,160 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.MemberStatisticsProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.EmbeddedMemberRepository;
+import com.quickstarts.kitchensink.repository.MemberCollections;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.repository.MembersPurgedEvent;
+import com.quickstarts.kitchensink.repository.MembersRestoredEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodically recomputes {@link MemberStatistics} with an aggregation over every members
+ * collection, correcting drift and picking up writes made by other instances. The embedded
+ * store has no collections and is counted in memory instead.
+ */
+@Slf4j
+@Component
+public class MemberStatisticsReconciler {
+
+    private final MemberStatistics statistics;
+    private final MemberCollections memberCollections;
+    private final MemberRepository memberRepository;
+    private final int sketchCapacity;
+
+    public MemberStatisticsReconciler(MemberStatistics statistics, MemberCollections memberCollections,
+                                      MemberRepository memberRepository, MemberStatisticsProperties properties) {
+        this.statistics = statistics;
+        this.memberCollections = memberCollections;
+        this.memberRepository = memberRepository;
+        this.sketchCapacity = properties.getSketchCapacity();
+    }
+
+    @Scheduled(fixedDelayString = "${kitchensink.stats.reconcile-interval:PT5M}")
+    public void reconcile() {
+        if (memberRepository instanceof EmbeddedMemberRepository embedded) {
+            reconcile(embedded);
+            return;
+        }
+        List<MongoTemplate> templates = memberCollections.templates();
+        if (templates.isEmpty()) {
+            return;
+        }
+        try {
+            MemberStatistics.Mark mark = statistics.mark();
+            List<Document> pipeline = pipeline();
+            long total = 0;
+            Map<Long, Long> buckets = new HashMap<>();
+            Map<String, Long> domains = new HashMap<>();
+            for (MongoTemplate template : templates) {
+                Document result = template.getCollection(template.getCollectionName(Member.class))
+                        .aggregate(pipeline).first();
+                if (result == null) {
+                    continue;
+                }
+                for (Document count : result.getList("total", Document.class)) {
+                    total += count.get("n", Number.class).longValue();
+                }
+                for (Document bucket : result.getList("buckets", Document.class)) {
+                    buckets.merge(bucket.get("_id", Number.class).longValue(), bucket.get("n", Number.class).longValue(), Long::sum);
+                }
+                for (Document domain : result.getList("domains", Document.class)) {
+                    if (domain.getString("_id") != null && !domain.getString("_id").isEmpty()) {
+                        domains.merge(domain.getString("_id"), domain.get("n", Number.class).longValue(), Long::sum);
+                    }
+                }
+            }
+            if (statistics.reconcile(mark, total, buckets, domains)) {
+                log.debug("Member statistics reconciled, {} members", total);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not reconcile member statistics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recounts once a purge has finished, after dropping the old counts at once if all
+     * members were purged.
+     */
+    @EventListener
+    public void onPurged(MembersPurgedEvent event) {
+        if (event.all()) {
+            statistics.recordDeleteAll();
+        }
+        reconcile();
+    }
+
+    /**
+     * Recounts once a restore has finished, it replaced the members without going through
+     * {@link MemberStatistics}.
+     */
+    @EventListener
+    public void onRestored(MembersRestoredEvent event) {
+        statistics.recordDeleteAll();
+        reconcile();
+    }
+
+    private void reconcile(EmbeddedMemberRepository embedded) {
+        MemberStatistics.Mark mark = statistics.mark();
+        long windowStart = statistics.windowStart();
+        long bucketMillis = statistics.bucketMillis();
+        long total = 0;
+        Map<Long, Long> buckets = new HashMap<>();
+        Map<String, Long> domains = new HashMap<>();
+        for (Member member : embedded.findAll()) {
+            total++;
+            if (ObjectId.isValid(member.getId())) {
+                long registeredAt = new ObjectId(member.getId()).getDate().getTime();
+                if (registeredAt >= windowStart) {
+                    buckets.merge(registeredAt - registeredAt % bucketMillis, 1L, Long::sum);
+                }
+            }
+            String domain = MemberStatistics.domainOf(member.getEmail());
+            if (domain != null) {
+                domains.merge(domain, 1L, Long::sum);
+            }
+        }
+        Map<String, Long> top = new HashMap<>();
+        domains.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(sketchCapacity)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        statistics.reconcile(mark, total, buckets, top);
+    }
+
+    private List<Document> pipeline() {
+        long bucketMillis = statistics.bucketMillis();
+        // Registration time comes from the ObjectId timestamp; other ids are not bucketed
+        Document registeredAt = new Document("$convert", new Document("input", "$_id")
+                .append("to", "date").append("onError", null).append("onNull", null));
+        Document millis = new Document("$toLong", "$registeredAt");
+        Document email = new Document("$ifNull", List.of("$email", ""));
+        Document domain = new Document("$toLower", new Document("$arrayElemAt",
+                List.of(new Document("$split", List.of(email, "@")), -1)));
+        return List.of(new Document("$facet", new Document()
+                .append("total", List.of(new Document("$count", "n")))
+                .append("buckets", List.of(
+                        new Document("$project", new Document("registeredAt", registeredAt)),
+                        new Document("$match", new Document("registeredAt",
+                                new Document("$gte", new Date(statistics.windowStart())))),
+                        new Document("$group", new Document("_id", new Document("$subtract",
+                                List.of(millis, new Document("$mod", List.of(millis, bucketMillis)))))
+                                .append("n", new Document("$sum", 1)))))
+                .append("domains", List.of(
+                        new Document("$group", new Document("_id", domain).append("n", new Document("$sum", 1))),
+                        new Document("$sort", new Document("n", -1)),
+                        new Document("$limit", sketchCapacity)))));
+    }
+}
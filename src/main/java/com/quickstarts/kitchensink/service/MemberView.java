@@ -0,0 +1,424 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.quickstarts.kitchensink.configuration.MemberViewProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.MemberComparators;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name-sorted copy of the members collections held in memory and kept current by tailing a
+ * change stream on each of them, so listings and id lookups are served without a query and
+ * still see writes made through other instances.
+ * <p>
+ * Each collection is loaded once after its stream has been opened, so no change made during
+ * the load is missed; events are full documents and applying one twice is harmless. The
+ * resume token of the last event is kept, and a failed stream is reopened from it. When the
+ * server can no longer resume from the token, or the collection is dropped, the collection
+ * is loaded again.
+ * <p>
+ * Every {@code kitchensink.member-view.checkpoint-interval} the tokens are also stored in the
+ * {@value #CHECKPOINT_COLLECTION} collection of partition 0, like the rebalancer checkpoint.
+ * A restarted view opens its streams from the stored tokens and replays what changed while
+ * it was down on top of the load; a token the server no longer has is dropped and the stream
+ * starts at the present.
+ * <p>
+ * The view reports how far behind the streams are. {@link #serving()} turns false while any
+ * collection is loading or the lag exceeds {@code kitchensink.member-view.max-lag}, and
+ * {@link MemberService} then reads from Mongo.
+ */
+@Slf4j
+public class MemberView implements SmartLifecycle {
+
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+    static final String CHECKPOINT_COLLECTION = "member_view";
+
+    private final List<Tail> tails = new ArrayList<>();
+    private final MongoCollection<BsonDocument> checkpoints;
+    private final ConcurrentSkipListSet<Member> byName = new ConcurrentSkipListSet<>(MemberComparators.BY_NAME);
+    private final long maxLagMillis;
+    private final long maxAwaitMillis;
+    private final long retryDelayMillis;
+    private final long checkpointIntervalMillis;
+    private final Counter servedFromView;
+    private final Counter servedFromMongo;
+    private volatile boolean running;
+
+    public MemberView(List<MongoTemplate> templates, MemberViewProperties properties, MeterRegistry meterRegistry) {
+        for (int i = 0; i < templates.size(); i++) {
+            tails.add(new Tail(i, templates.get(i)));
+        }
+        this.maxLagMillis = properties.getMaxLag().toMillis();
+        this.maxAwaitMillis = properties.getMaxAwaitTime().toMillis();
+        this.retryDelayMillis = properties.getRetryDelay().toMillis();
+        this.checkpointIntervalMillis = properties.getCheckpointInterval().toMillis();
+        this.checkpoints = templates.get(0).getCollection(CHECKPOINT_COLLECTION).withDocumentClass(BsonDocument.class);
+        this.servedFromView = reads(meterRegistry, "view");
+        this.servedFromMongo = reads(meterRegistry, "mongo");
+        Gauge.builder("kitchensink.members.view.lag", this, view -> view.lag().map(lag -> lag.toMillis() / 1000.0).orElse(Double.NaN))
+                .description("How far the member view is behind the database, NaN while it is loading")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("kitchensink.members.view.size", byName, ConcurrentSkipListSet::size)
+                .description("Members held by the member view")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether reads may be served from the view right now.
+     */
+    public boolean serving() {
+        return running && lag().map(lag -> lag.toMillis() <= maxLagMillis).orElse(false);
+    }
+
+    /**
+     * How far the view is behind the database, empty while any collection is still loading.
+     */
+    public Optional<Duration> lag() {
+        long oldest = Long.MAX_VALUE;
+        for (Tail tail : tails) {
+            if (!tail.loaded) {
+                return Optional.empty();
+            }
+            oldest = Math.min(oldest, tail.currentAsOf);
+        }
+        return Optional.of(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - oldest)));
+    }
+
+    public List<Member> findAllOrderedByName() {
+        servedFromView.increment();
+        return byName.stream().map(MemberView::copy).toList();
+    }
+
+    public Optional<Member> findById(String id) {
+        servedFromView.increment();
+        return Optional.ofNullable(lookup(id)).map(MemberView::copy);
+    }
+
+    public List<Member> findAllById(Collection<String> ids) {
+        servedFromView.increment();
+        List<Member> found = new ArrayList<>();
+        for (String id : ids) {
+            Member member = lookup(id);
+            if (member != null) {
+                found.add(copy(member));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Records a read that went to Mongo because the view was not serving.
+     */
+    void fellBack() {
+        servedFromMongo.increment();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("serving", serving());
+        status.put("members", byName.size());
+        status.put("lagMillis", lag().map(Duration::toMillis).orElse(null));
+        List<Map<String, Object>> streams = new ArrayList<>();
+        for (Tail tail : tails) {
+            Map<String, Object> stream = new LinkedHashMap<>();
+            stream.put("collection", tail.index);
+            stream.put("loaded", tail.loaded);
+            stream.put("members", tail.members.size());
+            stream.put("resumeToken", tail.resumeToken != null ? tail.resumeToken.toJson() : null);
+            stream.put("lastError", tail.lastError);
+            streams.add(stream);
+        }
+        status.put("streams", streams);
+        return status;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (Tail tail : tails) {
+            tail.thread = new Thread(tail, "member-view-" + tail.index);
+            tail.thread.setDaemon(true);
+            tail.thread.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Tail tail : tails) {
+            if (tail.thread != null) {
+                tail.thread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private Member lookup(String id) {
+        for (Tail tail : tails) {
+            Member member = tail.members.get(id);
+            if (member != null) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void put(Tail tail, Member member) {
+        Member previous = tail.members.put(member.getId(), member);
+        if (previous != null) {
+            unlink(previous);
+        }
+        byName.add(member);
+    }
+
+    private synchronized void remove(Tail tail, String id) {
+        Member previous = tail.members.remove(id);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    private synchronized void clear(Tail tail) {
+        List<Member> previous = new ArrayList<>(tail.members.values());
+        tail.members.clear();
+        previous.forEach(this::unlink);
+    }
+
+    private void unlink(Member member) {
+        byName.remove(member);
+        // A member being moved between partitions is briefly held by two of them
+        for (Tail tail : tails) {
+            Member other = tail.members.get(member.getId());
+            if (other != null) {
+                byName.add(other);
+            }
+        }
+    }
+
+    private static Counter reads(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("kitchensink.members.view.reads")
+                .description("Member reads by whether the member view or Mongo served them")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    private static String idOf(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private static Member copy(Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setName(member.getName());
+        copy.setEmail(member.getEmail());
+        copy.setPhoneNumber(member.getPhoneNumber());
+        return copy;
+    }
+
+    /**
+     * Loads one members collection and follows its change stream.
+     */
+    private final class Tail implements Runnable {
+
+        private final int index;
+        private final MongoTemplate template;
+        private final Map<String, Member> members = new ConcurrentHashMap<>();
+        private volatile boolean loaded;
+        private volatile long currentAsOf;
+        private volatile BsonDocument resumeToken;
+        private volatile String lastError;
+        private Thread thread;
+        private BsonDocument storedToken;
+        private long storedAt;
+        private boolean restored;
+
+        private Tail(int index, MongoTemplate template) {
+            this.index = index;
+            this.template = template;
+        }
+
+        @Override
+        public void run() {
+            long delay = retryDelayMillis;
+            while (running) {
+                try {
+                    follow();
+                    delay = retryDelayMillis;
+                } catch (MongoCommandException e) {
+                    lastError = e.getMessage();
+                    if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST || e.getErrorCode() == CHANGE_STREAM_FATAL_ERROR) {
+                        log.warn("Member view stream {} cannot resume, reloading: {}", index, e.getMessage());
+                        invalidate();
+                        continue;
+                    }
+                    log.warn("Member view stream {} failed, retrying in {} ms: {}", index, delay, e.getMessage());
+                } catch (RuntimeException e) {
+                    if (!running) {
+                        return;
+                    }
+                    lastError = e.getMessage();
+                    log.warn("Member view stream {} failed, retrying in {} ms: {}", index, delay, e.getMessage());
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+
+        private void follow() {
+            if (!restored) {
+                restored = true;
+                resumeToken = storedToken();
+            }
+            MongoCollection<Document> collection = template.getCollection(template.getCollectionName(Member.class));
+            ChangeStreamIterable<Document> stream = collection.watch()
+                    .fullDocument(FullDocument.UPDATE_LOOKUP)
+                    .maxAwaitTime(maxAwaitMillis, TimeUnit.MILLISECONDS);
+            if (resumeToken != null) {
+                stream = stream.resumeAfter(resumeToken);
+            }
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+                if (!loaded) {
+                    load(collection, cursor.getResumeToken());
+                }
+                lastError = null;
+                while (running) {
+                    long polledAt = System.currentTimeMillis();
+                    ChangeStreamDocument<Document> event = cursor.tryNext();
+                    if (event == null) {
+                        // An empty batch means the stream has seen everything up to the poll
+                        currentAsOf = polledAt;
+                        if (cursor.getResumeToken() != null) {
+                            resumeToken = cursor.getResumeToken();
+                        }
+                        checkpoint();
+                        continue;
+                    }
+                    if (!apply(event)) {
+                        invalidate();
+                        return;
+                    }
+                    resumeToken = event.getResumeToken();
+                    if (event.getWallTime() != null) {
+                        currentAsOf = event.getWallTime().getValue();
+                    } else if (event.getClusterTime() != null) {
+                        currentAsOf = event.getClusterTime().getTime() * 1000L;
+                    }
+                    checkpoint();
+                }
+            }
+        }
+
+        private void load(MongoCollection<Document> collection, BsonDocument startToken) {
+            long start = System.currentTimeMillis();
+            clear(this);
+            for (Document document : collection.find()) {
+                put(this, template.getConverter().read(Member.class, document));
+            }
+            resumeToken = startToken;
+            currentAsOf = start;
+            loaded = true;
+            log.info("Member view loaded {} members from collection {} in {} ms", members.size(), index,
+                    System.currentTimeMillis() - start);
+        }
+
+        /**
+         * Applies one event, returning false when the collection has to be loaded again.
+         */
+        private boolean apply(ChangeStreamDocument<Document> event) {
+            switch (event.getOperationType()) {
+                case INSERT, REPLACE, UPDATE -> {
+                    String id = idOf(event.getDocumentKey().get("_id"));
+                    if (event.getFullDocument() != null) {
+                        put(this, template.getConverter().read(Member.class, event.getFullDocument()));
+                    } else {
+                        // Deleted again before the update could be looked up
+                        remove(this, id);
+                    }
+                }
+                case DELETE -> remove(this, idOf(event.getDocumentKey().get("_id")));
+                case DROP, RENAME, DROP_DATABASE, INVALIDATE -> {
+                    return false;
+                }
+                default -> {
+                }
+            }
+            return true;
+        }
+
+        private void invalidate() {
+            loaded = false;
+            resumeToken = null;
+        }
+
+        private BsonDocument storedToken() {
+            try {
+                BsonDocument stored = checkpoints.find(Filters.eq("_id", index)).first();
+                return stored != null && stored.isDocument("resumeToken") ? stored.getDocument("resumeToken") : null;
+            } catch (RuntimeException e) {
+                log.warn("Could not read the stored token of member view stream {}, starting at the present: {}",
+                        index, e.getMessage());
+                return null;
+            }
+        }
+
+        private void checkpoint() {
+            BsonDocument token = resumeToken;
+            long now = System.currentTimeMillis();
+            if (token == null || token.equals(storedToken) || now - storedAt < checkpointIntervalMillis) {
+                return;
+            }
+            storedAt = now;
+            try {
+                checkpoints.replaceOne(Filters.eq("_id", index), new BsonDocument("_id", new BsonInt32(index))
+                        .append("resumeToken", token)
+                        .append("storedAt", new BsonDateTime(now)), new ReplaceOptions().upsert(true));
+                storedToken = token;
+            } catch (RuntimeException e) {
+                // The stream itself is fine, the token is stored again at the next interval
+                log.warn("Could not store the token of member view stream {}: {}", index, e.getMessage());
+            }
+        }
+    }
+}
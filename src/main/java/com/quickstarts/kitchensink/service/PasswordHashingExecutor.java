@@ -0,0 +1,98 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.AuthProperties;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs password verification on a small pool of its own, so that a burst of logins is
+ * limited to {@code kitchensink.auth.password-threads} cores instead of competing with the
+ * member API for request threads and CPU. Logins beyond the queue are rejected at once
+ * with {@link LoginThrottledException}, and a queued login is abandoned when its request
+ * deadline passes.
+ */
+@Component
+public class PasswordHashingExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final Timer duration;
+    private final Counter rejected;
+
+    public PasswordHashingExecutor(AuthProperties properties, MeterRegistry meterRegistry) {
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getPasswordThreads(), properties.getPasswordThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getPasswordQueue()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.duration = Timer.builder("kitchensink.auth.password.duration")
+                .description("Time spent verifying a password, excluding the wait for a thread")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("kitchensink.auth.password.rejected")
+                .description("Logins rejected because the password verification queue was full")
+                .register(meterRegistry);
+        Gauge.builder("kitchensink.auth.password.queued", executor, pool -> pool.getQueue().size())
+                .description("Logins waiting for a password verification thread")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code verification} on the pool and waits for its result within the request
+     * deadline.
+     */
+    public <T> T verify(Supplier<T> verification) {
+        Future<T> result;
+        try {
+            result = executor.submit(() -> duration.record(verification));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new LoginThrottledException("Too many logins in progress");
+        }
+        RequestDeadline deadline = RequestDeadline.current();
+        try {
+            if (deadline == null) {
+                return result.get();
+            }
+            return result.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new DeadlineExceededException("Request deadline exceeded waiting for the password check");
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Interrupted while waiting for the password check");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,68 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.ReadRoutingProperties;
+import com.quickstarts.kitchensink.repository.MembersPurgedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers when each authenticated client last wrote members, so that its reads can stay on
+ * the primary until the write has had time to reach the secondaries.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    private final Map<String, Long> lastWriteNanos = new ConcurrentHashMap<>();
+    private final long windowNanos;
+
+    public ReadYourWritesTracker(ReadRoutingProperties properties) {
+        this.windowNanos = properties.effectiveReadYourWritesWindow().toNanos();
+    }
+
+    public void recordWrite() {
+        recordWrite(currentClient());
+    }
+
+    /**
+     * A purge deletes members when it finishes, long after the request that started it.
+     */
+    @EventListener
+    public void onPurged(MembersPurgedEvent event) {
+        recordWrite(event.requestedBy());
+    }
+
+    private void recordWrite(String client) {
+        if (client == null) {
+            // Anonymous callers cannot be told apart, one shared window would pin them all to the primary
+            return;
+        }
+        long now = System.nanoTime();
+        lastWriteNanos.put(client, now);
+        if (lastWriteNanos.size() > CLEANUP_THRESHOLD) {
+            lastWriteNanos.values().removeIf(written -> now - written >= windowNanos);
+        }
+    }
+
+    public boolean inWindow() {
+        String client = currentClient();
+        Long written = client != null ? lastWriteNanos.get(client) : null;
+        return written != null && System.nanoTime() - written < windowNanos;
+    }
+
+    private static String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken
+                || !authentication.isAuthenticated()) {
+            return null;
+        }
+        return authentication.getName();
+    }
+}
@@ -0,0 +1,45 @@
+package com.quickstarts.kitchensink.util;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+/**
+ * Picks the bcrypt cost that makes one hash on this machine take about a target time.
+ * Each step of the cost doubles the work, so a single measurement at the lowest cost is
+ * enough to extrapolate.
+ */
+public final class BCryptCalibration {
+
+    private static final int RUNS = 3;
+
+    private BCryptCalibration() {
+    }
+
+    /**
+     * The highest cost between {@code minStrength} and {@code maxStrength} whose hash does not
+     * take longer than {@code target}, never lower than {@code minStrength}.
+     */
+    public static int strengthFor(Duration target, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(minStrength);
+        // Warm up, the first hash includes class loading and JIT compilation
+        encoder.encode("calibration");
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            encoder.encode("calibration");
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return strengthFor(target.toNanos(), fastest, minStrength, maxStrength);
+    }
+
+    static int strengthFor(long targetNanos, long nanosAtMinStrength, int minStrength, int maxStrength) {
+        int strength = minStrength;
+        long nanos = Math.max(1, nanosAtMinStrength);
+        while (strength < maxStrength && nanos * 2 <= targetNanos) {
+            nanos *= 2;
+            strength++;
+        }
+        return strength;
+    }
+}
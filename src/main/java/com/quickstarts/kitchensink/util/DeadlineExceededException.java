@@ -0,0 +1,13 @@
+package com.quickstarts.kitchensink.util;
+
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * The request deadline passed before the work could be finished.
+ */
+public class DeadlineExceededException extends QueryTimeoutException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
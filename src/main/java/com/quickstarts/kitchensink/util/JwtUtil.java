@@ -1,8 +1,10 @@
 package com.quickstarts.kitchensink.util;
 
 
+import com.quickstarts.kitchensink.configuration.AuthProperties;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
@@ -11,43 +13,75 @@ import java.util.Date;
 @Component
 public class JwtUtil {
 
+    // Tells access tokens from refresh tokens, tokens issued without it are access tokens
+    private static final String TOKEN_USE = "token_use";
+    private static final String ACCESS = "access";
+    private static final String REFRESH = "refresh";
+
     private final String SECRET_KEY = "thisisaverysecuresecretkeyforjwt12345";
-    private final long EXPIRATION_TIME = 1000 * 60 * 60; // Token validity: 1 hour
+    private final long expirationMillis;
+    private final long refreshExpirationMillis;
     private final Key key = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
 
-    public JwtUtil() {
-
+    public JwtUtil(AuthProperties properties) {
+        this.expirationMillis = properties.getAccessTokenTtl().toMillis();
+        this.refreshExpirationMillis = properties.getRefreshTokenTtl().toMillis();
     }
+
     public String generateToken(String username) {
+        return generate(username, ACCESS, expirationMillis);
+    }
+
+    /**
+     * A long-lived token that can only be exchanged for new access tokens.
+     */
+    public String generateRefreshToken(String username) {
+        return generate(username, REFRESH, refreshExpirationMillis);
+    }
+
+    private String generate(String username, String use, long validity) {
         return Jwts.builder()
                 .setSubject(username)
+                .claim(TOKEN_USE, use)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .setExpiration(new Date(System.currentTimeMillis() + validity))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return claims(token).getSubject();
     }
 
     public boolean validateToken(String token, String username) {
-        String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        Claims claims = claims(token);
+        return claims.getSubject().equals(username)
+                && !REFRESH.equals(claims.get(TOKEN_USE, String.class))
+                && !claims.getExpiration().before(new Date());
     }
 
-    private boolean isTokenExpired(String token) {
-        Date expiration = Jwts.parserBuilder()
+    /**
+     * The user a refresh token was issued to.
+     *
+     * @throws BadCredentialsException if the token is not a valid, unexpired refresh token
+     */
+    public String validateRefreshToken(String token) {
+        try {
+            Claims claims = claims(token);
+            if (!REFRESH.equals(claims.get(TOKEN_USE, String.class))) {
+                throw new BadCredentialsException("Not a refresh token");
+            }
+            return claims.getSubject();
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new BadCredentialsException("Invalid refresh token", e);
+        }
+    }
+
+    private Claims claims(String token) {
+        return Jwts.parserBuilder()
                 .setSigningKey(key)
                 .build()
                 .parseClaimsJws(token)
-                .getBody()
-                .getExpiration();
-        return expiration.before(new Date());
+                .getBody();
     }
 }
@@ -0,0 +1,95 @@
+package com.quickstarts.kitchensink.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The point in time by which the current request has to be answered. Set for the request
+ * thread by {@code RequestDeadlineFilter}; work handed to other threads carries it along
+ * with {@link #call(Supplier)}.
+ */
+public final class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private RequestDeadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static RequestDeadline after(Duration timeout) {
+        return new RequestDeadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * The deadline of the request running on this thread, or null if it has none.
+     */
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    public static void set(RequestDeadline deadline) {
+        CURRENT.set(deadline);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * The later of two deadlines, where null stands for no deadline at all.
+     */
+    public static RequestDeadline latest(RequestDeadline a, RequestDeadline b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        return a.expiresAtNanos - b.expiresAtNanos >= 0 ? a : b;
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public long remainingNanos() {
+        return expiresAtNanos - System.nanoTime();
+    }
+
+    public boolean expired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Throws {@link DeadlineExceededException} if the deadline has passed.
+     */
+    public void check() {
+        if (expired()) {
+            throw new DeadlineExceededException("Request deadline exceeded");
+        }
+    }
+
+    /**
+     * Runs {@code work} on the current thread with this deadline in effect.
+     */
+    public <T> T call(Supplier<T> work) {
+        RequestDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Runs {@code work} with {@code deadline} in effect, or without one if it is null.
+     */
+    public static <T> T callWith(RequestDeadline deadline, Supplier<T> work) {
+        return deadline != null ? deadline.call(work) : work.get();
+    }
+}
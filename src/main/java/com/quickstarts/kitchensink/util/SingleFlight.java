@@ -0,0 +1,92 @@
+package com.quickstarts.kitchensink.util;
+
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller runs the loader and
+ * everyone who asks for the key while it is running waits for and shares its result. Nothing
+ * is cached, the next call after completion runs the loader again.
+ * <p>
+ * Each caller waits no longer than its own {@link RequestDeadline}. A load that ran out of
+ * its leader's deadline is not shared: the callers waiting on it, whose deadlines may be
+ * later, take another turn instead.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs {@code loader} for {@code key}, or joins the call already running for it.
+     * Exceptions thrown by the loader are rethrown to every caller, except timeouts.
+     *
+     * @throws DeadlineExceededException if the caller's deadline passes while waiting
+     */
+    public V execute(K key, Supplier<V> loader) {
+        while (true) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                return lead(key, mine, loader);
+            }
+            try {
+                return await(running);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof QueryTimeoutException) {
+                    // Timed out on the leader's deadline, not necessarily on ours
+                    inFlight.remove(key, running);
+                    continue;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Whether a call for {@code key} is running, so that a new caller would share it.
+     */
+    public boolean inFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    private V lead(K key, CompletableFuture<V> mine, Supplier<V> loader) {
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) throws ExecutionException {
+        RequestDeadline deadline = RequestDeadline.current();
+        try {
+            if (deadline == null) {
+                return future.get();
+            }
+            return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Request deadline exceeded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Interrupted waiting for a shared load");
+        }
+    }
+}
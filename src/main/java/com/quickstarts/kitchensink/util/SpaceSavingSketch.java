@@ -0,0 +1,58 @@
+package com.quickstarts.kitchensink.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters sketch (Metwally et al.). Tracks at most {@code capacity}
+ * items; when a new item arrives while the sketch is full it replaces the item with the
+ * smallest count and inherits that count as its error bound. Any item whose true count
+ * exceeds {@code total / capacity} is guaranteed to be tracked.
+ * <p>
+ * Not thread safe, callers synchronize.
+ */
+public class SpaceSavingSketch {
+
+    private final int capacity;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public record Entry(String item, long count, long error) {
+    }
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public void add(String item, long increment) {
+        Entry entry = entries.get(item);
+        if (entry != null) {
+            entries.put(item, new Entry(item, entry.count() + increment, entry.error()));
+        } else if (entries.size() < capacity) {
+            entries.put(item, new Entry(item, increment, 0));
+        } else {
+            Entry smallest = entries.values().stream().min(Comparator.comparingLong(Entry::count)).orElseThrow();
+            entries.remove(smallest.item());
+            entries.put(item, new Entry(item, smallest.count() + increment, smallest.count()));
+        }
+    }
+
+    /**
+     * The {@code k} items with the highest estimated counts, highest first. Estimates never
+     * undercount; {@link Entry#error()} bounds the overcount.
+     */
+    public List<Entry> top(int k) {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(Entry::count).reversed().thenComparing(Entry::item));
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
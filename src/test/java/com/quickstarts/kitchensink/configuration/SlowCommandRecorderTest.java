@@ -0,0 +1,118 @@
+package com.quickstarts.kitchensink.configuration;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowCommandRecorderTest {
+
+    private static final ConnectionDescription CONNECTION =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress("mongo-1", 27017)));
+
+    private SlowCommandRecorder recorder;
+    private int requestId;
+
+    @AfterEach
+    void tearDown() {
+        recorder.destroy();
+    }
+
+    @Test
+    void testRecordsShapeOfCommandsOverThreshold() {
+        recorder = recorder(10);
+
+        run("find", "{find: 'members', filter: {email: 'akhil@gmail.com'}, sort: {name: 1}, $db: 'kitchensink'}", 5);
+        assertThat(recorder.slowCommands()).isEmpty();
+
+        // The first slow command of a kind is recorded without a shape, the next ones are copied when they start
+        run("update", "{update: 'members', updates: [{q: {_id: 41}, u: {$set: {name: 'x'}}}]}", 150);
+        BsonDocument update = BsonDocument.parse("{update: 'members', updates: [{q: {_id: 42}, u: {$set: {name: 'x'}}}]}");
+        start("update", update);
+        // The driver reuses the buffer behind the started document once the command is sent
+        update.put("updates", BsonDocument.parse("{a: [{q: {other: 1}}]}").get("a"));
+        succeed("update", 150);
+        run("find", "{find: 'members', filter: {email: 'akhil@gmail.com'}, sort: {name: 1}, $db: 'kitchensink'}", 120);
+        run("find", "{find: 'members', filter: {email: 'akhil@gmail.com'}, sort: {name: 1}, $db: 'kitchensink'}", 120);
+
+        assertThat(recorder.slowCommands()).hasSize(4).allSatisfy(slow -> {
+            assertThat(slow.getCollection()).isEqualTo("members");
+            assertThat(slow.getServer()).isEqualTo("mongo-1:27017");
+            assertThat(slow.isFailed()).isFalse();
+        });
+        assertThat(recorder.slowCommands()).extracting(SlowCommandRecorder.SlowCommand::getShape)
+                .containsExactlyInAnyOrder(null, null, "{\"filter\": {\"email\": \"?\"}, \"sort\": {\"name\": 1}}",
+                        "{\"filter\": {\"_id\": \"?\"}}");
+    }
+
+    @Test
+    void testDoesNotCountTheAwaitOfChangeStreamGetMores() {
+        recorder = recorder(10);
+
+        run("getMore", "{getMore: 7, collection: 'members', maxTimeMS: 500}", 550);
+        assertThat(recorder.slowCommands()).isEmpty();
+
+        run("getMore", "{getMore: 7, collection: 'members', maxTimeMS: 500}", 650);
+        run("getMore", "{getMore: 8, collection: 'members'}", 150);
+        assertThat(recorder.slowCommands()).extracting(SlowCommandRecorder.SlowCommand::getDurationMillis)
+                .containsExactlyInAnyOrder(650L, 150L);
+    }
+
+    @Test
+    void testSkipsIgnoredCommandsAndKeepsTheLatestInTheRing() {
+        recorder = recorder(2);
+
+        run("hello", "{hello: 1}", 500);
+        run("aggregate", "{aggregate: 'third', pipeline: [{$match: {name: 'y'}}]}", 500);
+        run("find", "{find: 'first'}", 500);
+        run("count", "{count: 'second', query: {domain: 'gmail.com'}}", 500);
+        start("aggregate", BsonDocument.parse("{aggregate: 'third', pipeline: [{$match: {name: 'x'}}]}"));
+        recorder.commandFailed(new CommandFailedEvent(null, 1, requestId, CONNECTION, "kitchensink", "aggregate",
+                TimeUnit.MILLISECONDS.toNanos(500), new IllegalStateException("boom")));
+
+        assertThat(recorder.slowCommands()).extracting(SlowCommandRecorder.SlowCommand::getCollection)
+                .containsExactlyInAnyOrder("second", "third");
+        assertThat(recorder.slowCommands()).filteredOn(slow -> slow.getCollection().equals("third"))
+                .singleElement()
+                .satisfies(slow -> {
+                    assertThat(slow.isFailed()).isTrue();
+                    assertThat(slow.getShape()).isEqualTo("{\"pipeline\": [{\"$match\": {\"name\": \"?\"}}]}");
+                });
+
+        recorder.clear();
+        assertThat(recorder.slowCommands()).isEmpty();
+    }
+
+    private SlowCommandRecorder recorder(int capacity) {
+        MongoTelemetryProperties properties = new MongoTelemetryProperties();
+        properties.setSlowCommandThreshold(Duration.ofMillis(100));
+        properties.setSlowCommandCapacity(capacity);
+        return new SlowCommandRecorder(properties, List::of);
+    }
+
+    private void run(String name, String command, long millis) {
+        start(name, BsonDocument.parse(command));
+        succeed(name, millis);
+    }
+
+    private void start(String name, BsonDocument command) {
+        recorder.commandStarted(new CommandStartedEvent(null, 1, ++requestId, CONNECTION, "kitchensink", name, command));
+    }
+
+    private void succeed(String name, long millis) {
+        recorder.commandSucceeded(new CommandSucceededEvent(null, 1, requestId, CONNECTION, "kitchensink", name,
+                new BsonDocument(), TimeUnit.MILLISECONDS.toNanos(millis)));
+    }
+}
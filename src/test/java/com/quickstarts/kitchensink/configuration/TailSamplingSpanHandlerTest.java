@@ -0,0 +1,142 @@
+package com.quickstarts.kitchensink.configuration;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TailSamplingSpanHandlerTest {
+
+    private final List<MutableSpan> exported = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TailSamplingSpanHandler handler;
+    private Tracing tracing;
+
+    @AfterEach
+    void tearDown() {
+        tracing.close();
+        handler.destroy();
+    }
+
+    @Test
+    void testKeepsFailedAndSlowTracesOnly() {
+        Tracer tracer = tracer(Duration.ofSeconds(30));
+
+        trace(tracer, "fast", 10_000, false);
+        trace(tracer, "slow", 600_000, false);
+        trace(tracer, "failed", 10_000, true);
+
+        assertThat(exported).extracting(MutableSpan::name)
+                .containsExactlyInAnyOrder("slow child", "slow", "failed child", "failed");
+        assertThat(meterRegistry.counter("kitchensink.tracing.traces", "decision", "dropped").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("kitchensink.tracing.traces", "decision", "error").count()).isEqualTo(1);
+
+        // A span ending after its trace was kept follows the decision
+        Span root = tracer.newTrace().name("late").start(1_000_000);
+        Span late = tracer.newChild(root.context()).name("late child").start(1_000_000);
+        root.finish(2_000_000);
+        late.finish(2_000_010);
+        assertThat(exported).extracting(MutableSpan::name).contains("late", "late child");
+    }
+
+    @Test
+    void testDecidesTracesWhoseRootNeverEnds() throws InterruptedException {
+        Tracer tracer = tracer(Duration.ofMillis(200));
+
+        Span root = tracer.newTrace().name("abandoned").start();
+        Span child = tracer.newChild(root.context()).name("failed child").start();
+        child.error(new IllegalStateException("boom"));
+        child.finish();
+        assertThat(exported).isEmpty();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (exported.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(exported).extracting(MutableSpan::name).containsExactly("failed child");
+    }
+
+    @Test
+    void testSpansRacingTheDecisionFollowIt() throws Exception {
+        Tracer tracer = tracer(Duration.ofMillis(100));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 200; i++) {
+                Span root = tracer.newTrace().name("dropped").start(1_000_000);
+                List<Span> children = new ArrayList<>();
+                for (int j = 0; j < 4; j++) {
+                    Span child = tracer.newChild(root.context()).name("late child").start(1_000_001);
+                    child.error(new IllegalStateException("boom"));
+                    children.add(child);
+                }
+                CountDownLatch ready = new CountDownLatch(1);
+                List<Future<?>> ends = new ArrayList<>();
+                for (Span child : children) {
+                    ends.add(executor.submit(() -> {
+                        ready.await();
+                        child.finish(1_000_002);
+                        return null;
+                    }));
+                }
+                ready.countDown();
+                root.finish(1_000_010);
+                for (Future<?> end : ends) {
+                    end.get(5, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // Give the sweeper the chance to decide any trace a late span started on its own
+        Thread.sleep(400);
+
+        // A failed child ending before its root makes the trace kept, after it the child is dropped with it
+        assertThat(exported).filteredOn(span -> span.name().equals("late child"))
+                .allSatisfy(child -> assertThat(exported).anySatisfy(span -> {
+                    assertThat(span.name()).isEqualTo("dropped");
+                    assertThat(span.traceId()).isEqualTo(child.traceId());
+                }));
+    }
+
+    private Tracer tracer(Duration traceTimeout) {
+        TracingProperties properties = new TracingProperties();
+        properties.setLatencyThreshold(Duration.ofMillis(500));
+        properties.setSamplePercentage(0);
+        properties.setTraceTimeout(traceTimeout);
+        handler = new TailSamplingSpanHandler(properties, exported::addAll, meterRegistry);
+        // Nothing is sampled at the head, every kept span is the tail sampler's decision
+        tracing = Tracing.newBuilder()
+                .sampler(Sampler.NEVER_SAMPLE)
+                .alwaysSampleLocal()
+                .addSpanHandler(handler)
+                .build();
+        return tracing.tracer();
+    }
+
+    private static void trace(Tracer tracer, String name, long durationMicros, boolean fail) {
+        long start = 1_000_000;
+        Span root = tracer.newTrace().name(name).start(start);
+        Span child = tracer.newChild(root.context()).name(name + " child").start(start + 1);
+        if (fail) {
+            child.error(new IllegalStateException("boom"));
+        }
+        child.finish(start + 2);
+        root.finish(start + durationMicros);
+    }
+}
@@ -0,0 +1,62 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.util.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Runs on the in-memory embedded store, no Mongo needed
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("embedded")
+@TestPropertySource(properties = {"kitchensink.embedded.data-dir=", "kitchensink.tracing.exporter=none",
+        "management.endpoints.web.exposure.include=membersnapshot,slowcommands"})
+class ActuatorSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Test
+    void shouldLetUsersReadEndpoints() throws Exception {
+        mockMvc.perform(get("/actuator/membersnapshot")
+                        .header("Authorization", "Bearer " + jwtUtil.generateToken("user")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldKeepWriteOperationsFromUsers() throws Exception {
+        String token = jwtUtil.generateToken("user");
+
+        mockMvc.perform(post("/actuator/membersnapshot/restore")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"file\": \"members.snap\", \"replace\": true}"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(delete("/actuator/slowcommands")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldLetAdminsRunWriteOperations() throws Exception {
+        // The embedded store has no Mongo collections to snapshot, which the endpoint reports
+        mockMvc.perform(post("/actuator/membersnapshot/snapshot")
+                        .header("Authorization", "Bearer " + jwtUtil.generateToken("admin"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"file\": \"members.snap\"}"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,101 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.quickstarts.kitchensink.util.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Runs on the in-memory embedded store, no Mongo needed
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("embedded")
+@TestPropertySource(properties = {"kitchensink.embedded.data-dir=", "kitchensink.tracing.exporter=none"})
+class AuthControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private InMemoryUserDetailsManager userDetailsManager;
+
+    @Test
+    void shouldIssueAccessTokenForRefreshToken() throws Exception {
+        MvcResult login = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\": \"user\", \"password\": \"password\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(AuthController.REFRESH_TOKEN_HEADER))
+                .andReturn();
+        String refreshToken = login.getResponse().getHeader(AuthController.REFRESH_TOKEN_HEADER);
+
+        String accessToken = mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\": \"" + refreshToken + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(jwtUtil.extractUsername(accessToken)).isEqualTo("user");
+        mockMvc.perform(get("/members").header("Authorization", "Bearer " + accessToken))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldRejectRefreshTokenAsBearer() throws Exception {
+        mockMvc.perform(get("/members").header("Authorization", "Bearer " + jwtUtil.generateRefreshToken("user")))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldRejectAccessTokenAtRefresh() throws Exception {
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\": \"" + jwtUtil.generateToken("user") + "\"}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldRefuseDisabledUserAtRefresh() throws Exception {
+        createDisabledUser();
+
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\": \"" + jwtUtil.generateRefreshToken("disabled") + "\"}"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\": \"" + jwtUtil.generateRefreshToken("removed") + "\"}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldRejectAccessTokenOfDisabledUser() throws Exception {
+        createDisabledUser();
+
+        mockMvc.perform(get("/members").header("Authorization", "Bearer " + jwtUtil.generateToken("disabled")))
+                .andExpect(status().isForbidden());
+    }
+
+    private void createDisabledUser() {
+        if (!userDetailsManager.userExists("disabled")) {
+            userDetailsManager.createUser(User.withUsername("disabled").password("{noop}disabled")
+                    .roles("USER").disabled(true).build());
+        }
+    }
+}
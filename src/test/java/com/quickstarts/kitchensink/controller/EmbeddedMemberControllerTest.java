@@ -0,0 +1,52 @@
+package com.quickstarts.kitchensink.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.JwtUtil;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+// Runs on the in-memory embedded store, no Mongo needed
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("embedded")
+@TestPropertySource(properties = {"kitchensink.embedded.data-dir=", "kitchensink.tracing.exporter=none"})
+class EmbeddedMemberControllerTest implements MemberControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Override
+    public MockMvc mockMvc() {
+        return mockMvc;
+    }
+
+    @Override
+    public MemberRepository memberRepository() {
+        return memberRepository;
+    }
+
+    @Override
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public JwtUtil jwtUtil() {
+        return jwtUtil;
+    }
+}
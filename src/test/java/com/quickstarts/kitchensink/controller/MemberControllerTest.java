@@ -3,54 +3,55 @@ package com.quickstarts.kitchensink.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.quickstarts.kitchensink.repository.MemberRepository;
 import com.quickstarts.kitchensink.model.Member;
-import com.quickstarts.kitchensink.util.MongoTestingUtil;
+import com.quickstarts.kitchensink.util.JwtUtil;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
-import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
-import com.quickstarts.kitchensink.util.JwtTestUtil;
-@SpringBootTest
-@AutoConfigureMockMvc
-@Disabled
-class MemberControllerTest extends MongoTestingUtil {
-     @Autowired
-    private MockMvc mockMvc;
 
-    @Autowired
-    private MemberRepository memberRepository;
+/**
+ * The controller tests, run against each member store by {@link EmbeddedMemberControllerTest}
+ * and {@link MongoMemberControllerTest}.
+ */
+interface MemberControllerTest {
+
+    MockMvc mockMvc();
 
-    @Autowired
-    private ObjectMapper objectMapper;
+    MemberRepository memberRepository();
 
+    ObjectMapper objectMapper();
+
+    JwtUtil jwtUtil();
 
     @BeforeEach
-    void setUp() {
-        memberRepository.deleteAll();
+    default void setUp() {
+        memberRepository().deleteAll();
     }
 
     @Test
-    void shouldRegisterMember() throws Exception {
+    default void shouldRegisterMember() throws Exception {
         Member member = new Member();
         member.setName("Akhil");
         member.setEmail("this@gmail.com");
         member.setPhoneNumber("1234567890");
 
-        String jwtToken = JwtTestUtil.generateToken("user");
+        String jwtToken = jwtUtil().generateToken("user");
 
-        mockMvc.perform(post("/members")
+        mockMvc().perform(post("/members")
                         .header("Authorization", "Bearer " + jwtToken)
                         .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(member)))
+                        .content(objectMapper().writeValueAsString(member)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.name").value("Akhil"))
                 .andExpect(jsonPath("$.email").value("this@gmail.com"))
@@ -58,7 +59,7 @@ class MemberControllerTest extends MongoTestingUtil {
     }
 
     @Test
-    void shouldGetAllMembers() throws Exception {
+    default void shouldGetAllMembers() throws Exception {
         Member member1 = new Member();
         member1.setName("Akhil");
         member1.setEmail("talk@gmail.com");
@@ -69,10 +70,10 @@ class MemberControllerTest extends MongoTestingUtil {
         member2.setEmail("Bhatia@gmail.com");
         member2.setPhoneNumber("1234567890");
 
-        memberRepository.save(member1);
-        memberRepository.save(member2);
-        String jwtToken = JwtTestUtil.generateToken("user");
-        mockMvc.perform(get("/members").header("Authorization", "Bearer " + jwtToken))
+        memberRepository().save(member1);
+        memberRepository().save(member2);
+        String jwtToken = jwtUtil().generateToken("user");
+        mockMvc().perform(get("/members").header("Authorization", "Bearer " + jwtToken))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].name").value("Akhil"))
@@ -80,30 +81,30 @@ class MemberControllerTest extends MongoTestingUtil {
     }
 
     @Test
-    void shouldGetMemberById() throws Exception {
+    default void shouldGetMemberById() throws Exception {
         Member member = new Member();
         member.setName("Set");
         member.setEmail("akhil@gmail.com");
-        Member savedMember = memberRepository.save(member);
-        String jwtToken = JwtTestUtil.generateToken("user");
+        Member savedMember = memberRepository().save(member);
+        String jwtToken = jwtUtil().generateToken("user");
 
-        mockMvc.perform(get("/members/{id}", savedMember.getId()).header("Authorization", "Bearer " + jwtToken))
+        mockMvc().perform(get("/members/{id}", savedMember.getId()).header("Authorization", "Bearer " + jwtToken))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.name").value("Set"))
                 .andExpect(jsonPath("$.email").value("akhil@gmail.com"));
     }
 
     @Test
-    void shouldReturn404WhenMemberNotFound() throws Exception {
-        String jwtToken = JwtTestUtil.generateToken("user");
-        mockMvc.perform(get("/members/{id}", "9999").header("Authorization", "Bearer " + jwtToken))
+    default void shouldReturn404WhenMemberNotFound() throws Exception {
+        String jwtToken = jwtUtil().generateToken("user");
+        mockMvc().perform(get("/members/{id}", "9999").header("Authorization", "Bearer " + jwtToken))
                 .andExpect(status().isNotFound());
     }
 
 
 
     @Test
-    void shouldRetur409WhenEmailIsDuplicate() throws Exception {
+    default void shouldRetur409WhenEmailIsDuplicate() throws Exception {
         Member member1 = new Member();
         member1.setName("Set");
         member1.setEmail("set@gmail.com");
@@ -113,17 +114,44 @@ class MemberControllerTest extends MongoTestingUtil {
         member2.setName("Set1");
         member2.setEmail("set@gmail.com");
         member2.setPhoneNumber("0987654321");
-        String jwtToken = JwtTestUtil.generateToken("user");
-        mockMvc.perform(post("/members")
+        String jwtToken = jwtUtil().generateToken("user");
+        mockMvc().perform(post("/members")
                         .header("Authorization", "Bearer " + jwtToken)
                         .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(member1)))
+                        .content(objectMapper().writeValueAsString(member1)))
                 .andExpect(status().isOk());
 
-        mockMvc.perform(post("/members")
+        mockMvc().perform(post("/members")
+                        .header("Authorization", "Bearer " + jwtToken)
                         .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(member2)))
+                        .content(objectMapper().writeValueAsString(member2)))
                 .andExpect(status().isBadRequest());
     }
 
-}
\ No newline at end of file
+    @Test
+    default void shouldStreamChangesAsServerSentEvents() throws Exception {
+        String jwtToken = jwtUtil().generateToken("user");
+        MvcResult stream = mockMvc().perform(get("/members/changes")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        Member member = new Member();
+        member.setName("Stream");
+        member.setEmail("stream@gmail.com");
+        member.setPhoneNumber("1234567890");
+        mockMvc().perform(post("/members")
+                        .header("Authorization", "Bearer " + jwtToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper().writeValueAsString(member)))
+                .andExpect(status().isOk());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!stream.getResponse().getContentAsString().contains("stream@gmail.com") && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(stream.getResponse().getContentAsString())
+                .contains("event:registered")
+                .contains("stream@gmail.com");
+    }
+}
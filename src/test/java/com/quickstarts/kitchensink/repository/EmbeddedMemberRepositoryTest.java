@@ -0,0 +1,121 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddedMemberRepositoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testListsByNameAndRejectsDuplicateEmail() {
+        EmbeddedMemberRepository repository = new EmbeddedMemberRepository();
+        repository.save(member("Bhatia", "bhatia@gmail.com"));
+        Member akhil = repository.save(member("Akhil", "akhil@gmail.com"));
+
+        assertThat(akhil.getId()).isNotNull();
+        assertThat(repository.findAllByOrderByNameAsc()).extracting(Member::getName).containsExactly("Akhil", "Bhatia");
+        assertThat(repository.findByEmail("akhil@gmail.com").getId()).isEqualTo(akhil.getId());
+        assertThatThrownBy(() -> repository.save(member("Other", "akhil@gmail.com")))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        akhil.setName("Zed");
+        assertThat(repository.findById(akhil.getId())).get().extracting(Member::getName).isEqualTo("Akhil");
+        repository.save(akhil);
+        assertThat(repository.findAllByOrderByNameAsc()).extracting(Member::getName).containsExactly("Bhatia", "Zed");
+    }
+
+    @Test
+    void testMatchesExamplesAndAnswersFluentQueries() {
+        EmbeddedMemberRepository repository = new EmbeddedMemberRepository();
+        repository.save(member("Bhatia", "bhatia@gmail.com"));
+        repository.save(member("Akhil", "akhil@GMAIL.com"));
+        repository.save(member("Chris", "chris@example.com"));
+
+        ExampleMatcher gmail = ExampleMatcher.matching().withIgnorePaths("phoneNumber")
+                .withMatcher("email", matcher -> matcher.endsWith().ignoreCase());
+        Example<Member> example = Example.of(member(null, "@gmail.com"), gmail);
+        assertThat(repository.findAll(example, Sort.by("name"))).extracting(Member::getName)
+                .containsExactly("Akhil", "Bhatia");
+        assertThat(repository.count(Example.of(member(null, "^[ab]"),
+                ExampleMatcher.matching().withIgnorePaths("phoneNumber").withStringMatcher(ExampleMatcher.StringMatcher.REGEX))))
+                .isEqualTo(2);
+
+        List<Member> last = repository.findBy(example, query -> query.sortBy(Sort.by("name").descending()).limit(1).all());
+        assertThat(last).extracting(Member::getName).containsExactly("Bhatia");
+        Member first = repository.findBy(example, query -> query.project("name").sortBy(Sort.by("name")).firstValue());
+        assertThat(first.getName()).isEqualTo("Akhil");
+        assertThat(first.getEmail()).isNull();
+        Page<Member> page = repository.findBy(example, query -> query.page(PageRequest.of(1, 1, Sort.by("name"))));
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(page.getContent()).extracting(Member::getName).containsExactly("Bhatia");
+        assertThatThrownBy(() -> repository.findBy(example, FluentQuery.FetchableFluentQuery::oneValue))
+                .isInstanceOf(IncorrectResultSizeDataAccessException.class);
+    }
+
+    @Test
+    void testReplaysLogAfterRestart() throws Exception {
+        Path log = dataDir.resolve("members.log");
+        EmbeddedMemberRepository repository = new EmbeddedMemberRepository(log, 10_000, 0);
+        Member akhil = repository.save(member("Akhil", "akhil@gmail.com"));
+        Member bhatia = repository.save(member("Bhatia", "bhatia@gmail.com"));
+        repository.deleteById(bhatia.getId());
+        akhil.setEmail("akhil@example.com");
+        repository.save(akhil);
+        repository.destroy();
+
+        EmbeddedMemberRepository reopened = new EmbeddedMemberRepository(log, 10_000, 0);
+        assertThat(reopened.count()).isEqualTo(1);
+        assertThat(reopened.findByEmail("akhil@example.com").getId()).isEqualTo(akhil.getId());
+        assertThat(reopened.findByEmail("akhil@gmail.com")).isNull();
+        reopened.save(member("Bhatia", "akhil@gmail.com"));
+        reopened.destroy();
+    }
+
+    @Test
+    void testCompactsAndIgnoresTornTail() throws Exception {
+        Path log = dataDir.resolve("members.log");
+        EmbeddedMemberRepository repository = new EmbeddedMemberRepository(log, 100, 0);
+        Member member = repository.save(member("Akhil", "akhil@gmail.com"));
+        for (int i = 0; i < 500; i++) {
+            member.setPhoneNumber(String.valueOf(1_000_000_000L + i));
+            repository.save(member);
+        }
+        repository.save(member("Bhatia", "bhatia@gmail.com"));
+        repository.destroy();
+        assertThat(Files.size(log)).isLessThan(10_000);
+
+        // A record whose payload never made it to disk
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            long end = file.length();
+            file.setLength(end + 64);
+            file.seek(end);
+            file.writeInt(40);
+            file.writeInt(12345);
+        }
+
+        EmbeddedMemberRepository reopened = new EmbeddedMemberRepository(log, 100, 0);
+        assertThat(reopened.findAllByOrderByNameAsc()).extracting(Member::getName).containsExactly("Akhil", "Bhatia");
+        assertThat(reopened.findById(member.getId())).get().extracting(Member::getPhoneNumber).isEqualTo("1000000499");
+        reopened.destroy();
+    }
+}
@@ -0,0 +1,72 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberPartitionerTest {
+
+    @Test
+    void testIdCarriesRoutingKeyOfEmail() {
+        String id = MemberPartitioner.newId("akhil@gmail.com");
+
+        assertThat(MemberPartitioner.routingKeyOf(id)).hasValue(MemberPartitioner.routingKey("akhil@gmail.com"));
+        assertThat(MemberPartitioner.routingKeyOf("999")).isEmpty();
+        assertThat(MemberPartitioner.placementKey(new ObjectId(id), "changed@example.com"))
+                .isEqualTo(MemberPartitioner.routingKey("akhil@gmail.com"));
+    }
+
+    @Test
+    void testIdsCreatedElsewhereCarryNoRoutingKey() {
+        int withKey = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (MemberPartitioner.routingKeyOf(new ObjectId().toHexString()).isPresent()) {
+                withKey++;
+            }
+        }
+
+        assertThat(withKey).isLessThan(5);
+        assertThat(MemberPartitioner.placementKey(new ObjectId(), "akhil@gmail.com"))
+                .isEqualTo(MemberPartitioner.routingKey("akhil@gmail.com"));
+    }
+
+    @Test
+    void testGrowingPartitionsOnlyMovesToNewPartition() {
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String email = "member" + i + "@example.com";
+            int before = MemberPartitioner.partitionForEmail(email, 4);
+            int after = MemberPartitioner.partitionForEmail(email, 5);
+            assertThat(after == before || after == 4).isTrue();
+            if (after != before) {
+                moved++;
+            }
+        }
+
+        // Roughly 1/5 of the keys should move to the new partition
+        assertThat(moved).isBetween(1_500, 2_500);
+    }
+
+    @Test
+    void testMergeKeepsNameOrderAcrossPartitions() {
+        List<Member> first = List.of(member("1", "Akhil", "akhil@example.com"),
+                member("3", "Charlie", "charlie@example.com"));
+        List<Member> second = List.of(member("2", "Bhatia", "bhatia@example.com"),
+                member("4", "Dave", "dave@example.com"));
+
+        List<String> names = new ArrayList<>();
+        try (SortedMergeIterator merged = new SortedMergeIterator(
+                List.of(first.stream(), second.stream(), Stream.empty()), MemberComparators.BY_NAME)) {
+            merged.forEachRemaining(member -> names.add(member.getName()));
+        }
+
+        assertThat(names).containsExactly("Akhil", "Bhatia", "Charlie", "Dave");
+    }
+}
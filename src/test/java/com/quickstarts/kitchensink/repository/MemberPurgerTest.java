@@ -0,0 +1,73 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberPurgerTest {
+
+    private final EmbeddedMemberRepository repository = new EmbeddedMemberRepository();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private final MemberPurger purger = new MemberPurger(repository,
+            new MemberCollections(repository, new StaticListableBeanFactory().getBeanProvider(MongoTemplate.class)),
+            events::add, 2, Duration.ZERO, 10);
+
+    @AfterEach
+    void tearDown() {
+        purger.destroy();
+    }
+
+    @Test
+    void testPurgesDomainInChunks() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            repository.save(member("Member", "purged" + i + "@Example.com"));
+        }
+        repository.save(member("Member", "kept@other.com"));
+
+        Map<String, Object> job = purger.start("example.com", "user");
+        // The job may already have finished by the time its first status is returned
+        assertThat(job).containsEntry("domain", "example.com").containsKey("jobId");
+
+        Map<String, Object> done = await((String) job.get("jobId"));
+        assertThat(done.get("state")).isEqualTo(MemberPurger.State.COMPLETED);
+        assertThat(done.get("deleted")).isEqualTo(5L);
+        assertThat(done.get("chunks")).isEqualTo(3L);
+        assertThat(repository.findAll()).extracting(Member::getEmail).containsExactly("kept@other.com");
+        assertThat(events).containsExactly(new MembersPurgedEvent((String) job.get("jobId"), "example.com", "user", 5));
+    }
+
+    @Test
+    void testPurgesAllMembers() throws InterruptedException {
+        repository.save(member("Member", "a@example.com"));
+        repository.save(member("Member", "b@other.com"));
+
+        Map<String, Object> done = await((String) purger.start(null, "user").get("jobId"));
+
+        assertThat(done.get("deleted")).isEqualTo(2L);
+        assertThat(repository.count()).isZero();
+        assertThat(((MembersPurgedEvent) events.get(0)).all()).isTrue();
+    }
+
+    private Map<String, Object> await(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            Map<String, Object> status = purger.status(jobId).orElseThrow();
+            if (status.get("state") == MemberPurger.State.COMPLETED || status.get("state") == MemberPurger.State.FAILED) {
+                return status;
+            }
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.quickstarts.kitchensink.repository;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRoundTripsDocumentsAndIndexes() throws IOException {
+        Path path = directory.resolve("members.snapshot");
+        BsonDocument emailIndex = new BsonDocument("v", new BsonInt32(2))
+                .append("key", new BsonDocument("email", new BsonInt32(1)))
+                .append("name", new BsonString("email"));
+        try (MemberSnapshotFile.Writer writer = MemberSnapshotFile.create(path, 1024)) {
+            for (int i = 0; i < 500; i++) {
+                writer.write(member(i));
+            }
+            writer.finish(List.of(emailIndex));
+        }
+        assertThat(directory.resolve("members.snapshot.tmp")).doesNotExist();
+
+        try (MemberSnapshotFile.Reader reader = MemberSnapshotFile.open(path)) {
+            assertThat(reader.documents()).isEqualTo(500);
+            assertThat(reader.indexes()).containsExactly(emailIndex);
+            assertThat(reader.chunks()).hasSizeGreaterThan(1);
+            List<RawBsonDocument> read = new ArrayList<>();
+            for (MemberSnapshotFile.Chunk chunk : reader.chunks()) {
+                read.addAll(reader.read(chunk));
+            }
+            assertThat(read).hasSize(500);
+            assertThat(read.get(499).getString("email").getValue()).isEqualTo("member499@example.com");
+            assertThat(read.get(0)).isEqualTo(member(0));
+        }
+    }
+
+    @Test
+    void testDetectsCorruptionAndIncompleteFiles() throws IOException {
+        Path path = directory.resolve("members.snapshot");
+        try (MemberSnapshotFile.Writer writer = MemberSnapshotFile.create(path, 1024)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(member(i));
+            }
+            writer.finish(List.of());
+        }
+        try (MemberSnapshotFile.Reader reader = MemberSnapshotFile.open(path);
+             RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            MemberSnapshotFile.Chunk first = reader.chunks().get(0);
+            file.seek(first.offset() + 20);
+            file.write(file.read() ^ 0xFF);
+            assertThatThrownBy(() -> reader.read(first)).isInstanceOf(IOException.class).hasMessageContaining("corrupt");
+            assertThat(reader.read(reader.chunks().get(1))).isNotEmpty();
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        assertThatThrownBy(() -> MemberSnapshotFile.open(path)).isInstanceOf(IOException.class);
+
+        // A snapshot abandoned before finish leaves nothing behind
+        Path abandoned = directory.resolve("abandoned.snapshot");
+        try (MemberSnapshotFile.Writer writer = MemberSnapshotFile.create(abandoned, 1024)) {
+            writer.write(member(0));
+        }
+        assertThat(abandoned).doesNotExist();
+        assertThat(Files.list(directory)).containsExactly(path);
+    }
+
+    private static RawBsonDocument member(int i) {
+        BsonDocument member = new BsonDocument("_id", new BsonString("id" + i))
+                .append("name", new BsonString("Member"))
+                .append("email", new BsonString("member" + i + "@example.com"))
+                .append("phoneNumber", new BsonString("1234567890"));
+        return new RawBsonDocument(member, new BsonDocumentCodec());
+    }
+}
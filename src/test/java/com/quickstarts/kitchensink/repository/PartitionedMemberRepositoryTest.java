@@ -0,0 +1,196 @@
+package com.quickstarts.kitchensink.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.util.MongoTestingUtil;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartitionedMemberRepositoryTest extends MongoTestingUtil {
+
+    private static final List<String> DATABASES = List.of("members_p0", "members_p1");
+
+    private MongoClient client;
+    private List<MongoTemplate> templates;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(mongoDBContainer.getReplicaSetUrl());
+        DATABASES.forEach(database -> client.getDatabase(database).drop());
+        templates = DATABASES.stream().map(database -> new MongoTemplate(client, database)).toList();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    void testPagesMergeBothPartitionsInOrder() {
+        PartitionedMemberRepository repository = new PartitionedMemberRepository(partitions(2));
+        List<Member> saved = new ArrayList<>();
+        for (int i = 0; i < 45; i++) {
+            // Repeated names make the id tie break decide the order within a name
+            saved.add(repository.save(member("Name" + (char) ('a' + i % 9), "member" + i + "@example.com")));
+        }
+        assertThat(templates).allSatisfy(template -> assertThat(template.count(new Query(), Member.class)).isPositive());
+
+        List<String> paged = new ArrayList<>();
+        Page<Member> page = repository.findAll(PageRequest.of(0, 7, Sort.by("name")));
+        assertThat(page.getTotalElements()).isEqualTo(45);
+        while (true) {
+            page.forEach(member -> paged.add(member.getId()));
+            if (!page.hasNext()) {
+                break;
+            }
+            page = repository.findAll(page.nextPageable());
+        }
+
+        List<String> expected = saved.stream()
+                .sorted(Comparator.comparing(Member::getName).thenComparing(Member::getId))
+                .map(Member::getId)
+                .toList();
+        assertThat(paged).containsExactlyElementsOf(expected);
+        assertThat(repository.findAllById(expected.subList(10, 20)))
+                .extracting(Member::getId).containsExactlyElementsOf(expected.subList(10, 20));
+    }
+
+    @Test
+    void testFluentQueriesMergeBothPartitions() {
+        PartitionedMemberRepository repository = new PartitionedMemberRepository(partitions(2));
+        for (int i = 0; i < 20; i++) {
+            repository.save(member("Name" + (char) ('a' + i), "member" + i + (i % 2 == 0 ? "@gmail.com" : "@example.com")));
+        }
+        Example<Member> gmail = Example.of(member(null, "@gmail.com"), ExampleMatcher.matching()
+                .withIgnorePaths("phoneNumber").withMatcher("email", matcher -> matcher.endsWith()));
+
+        List<Member> firstThree = repository.findBy(gmail, query -> query.sortBy(Sort.by("name")).limit(3).all());
+        assertThat(firstThree).extracting(Member::getName).containsExactly("Namea", "Namec", "Namee");
+        Page<Member> page = repository.findBy(gmail, query -> query.page(PageRequest.of(2, 4, Sort.by("name"))));
+        assertThat(page.getTotalElements()).isEqualTo(10);
+        assertThat(page.getContent()).extracting(Member::getName).containsExactly("Nameq", "Names");
+        long count = repository.findBy(gmail, FluentQuery.FetchableFluentQuery::count);
+        assertThat(count).isEqualTo(10);
+    }
+
+    @Test
+    void testRebalanceKeepsSavesMadeWhileItRuns() {
+        PartitionedMemberRepository single = new PartitionedMemberRepository(partitions(1));
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            members.add(single.save(member("Before", "member" + i + "@example.com")));
+        }
+
+        MemberPartitions grown = partitions(2);
+        assertThat(grown.layout().migrating()).isTrue();
+        PartitionedMemberRepository repository = new PartitionedMemberRepository(grown);
+        MemberRebalancer rebalancer = new MemberRebalancer(grown, 10, Duration.ofMillis(5));
+        Map<String, String> lastSaved = new ConcurrentHashMap<>();
+        try {
+            assertThat(rebalancer.start()).isTrue();
+            int round = 0;
+            while (Boolean.TRUE.equals(rebalancer.status().get("running"))) {
+                Member member = members.get(ThreadLocalRandom.current().nextInt(members.size()));
+                member.setName("After" + (char) ('a' + round++ % 26));
+                repository.save(member);
+                lastSaved.put(member.getId(), member.getName());
+            }
+        } finally {
+            rebalancer.destroy();
+        }
+
+        assertThat(rebalancer.status().get("lastError")).isNull();
+        assertThat(grown.layout().migrating()).isFalse();
+        assertThat(lastSaved).isNotEmpty();
+        assertThat(repository.count()).isEqualTo(300);
+        for (Member member : members) {
+            int owner = grown.ownerOf(member.getEmail());
+            assertThat(templates.get(owner).findById(member.getId(), Member.class)).isNotNull();
+            assertThat(templates.get(1 - owner).findById(member.getId(), Member.class)).isNull();
+            String expectedName = lastSaved.getOrDefault(member.getId(), "Before");
+            assertThat(repository.findById(member.getId())).get()
+                    .extracting(Member::getName).isEqualTo(expectedName);
+        }
+    }
+
+    @Test
+    void testIdsWithoutRoutingKeyAreFoundOnAnyPartition() {
+        PartitionedMemberRepository repository = new PartitionedMemberRepository(partitions(2));
+        List<Member> legacy = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Member member = member("Legacy", "legacy" + i + "@example.com");
+            // Created before partitioning, its id says nothing about the partition
+            member.setId(new ObjectId().toHexString());
+            legacy.add(repository.insert(member));
+        }
+        assertThat(templates).allSatisfy(template -> assertThat(template.count(new Query(), Member.class)).isPositive());
+
+        for (Member member : legacy) {
+            assertThat(repository.findById(member.getId())).isPresent();
+        }
+        assertThat(repository.findAllById(legacy.stream().map(Member::getId).toList())).hasSize(20);
+
+        // A legacy member follows its email, and no copy stays behind where it was
+        Member moved = legacy.stream()
+                .filter(member -> MemberPartitioner.partitionForEmail(member.getEmail(), 2) == 0)
+                .findFirst().orElseThrow();
+        String email = IntStream.range(0, 100).mapToObj(i -> "moved" + i + "@example.com")
+                .filter(candidate -> MemberPartitioner.partitionForEmail(candidate, 2) == 1)
+                .findFirst().orElseThrow();
+        moved.setEmail(email);
+        repository.save(moved);
+        assertThat(templates.get(0).findById(moved.getId(), Member.class)).isNull();
+        assertThat(templates.get(1).findById(moved.getId(), Member.class)).isNotNull();
+        assertThat(repository.findByEmail(email)).extracting(Member::getId).isEqualTo(moved.getId());
+    }
+
+    @Test
+    void testMemberStaysWithItsIdWhenTheEmailChanges() {
+        PartitionedMemberRepository repository = new PartitionedMemberRepository(partitions(2));
+        Member member = repository.save(member("Akhil", "akhil@example.com"));
+        int owner = MemberPartitioner.partitionForEmail("akhil@example.com", 2);
+        String email = IntStream.range(0, 100).mapToObj(i -> "akhil" + i + "@example.com")
+                .filter(candidate -> MemberPartitioner.partitionForEmail(candidate, 2) != owner)
+                .findFirst().orElseThrow();
+
+        member.setEmail(email);
+        repository.save(member);
+
+        assertThat(templates.get(owner).findById(member.getId(), Member.class)).isNotNull();
+        assertThat(templates.get(1 - owner).findById(member.getId(), Member.class)).isNull();
+        assertThat(repository.findById(member.getId())).get().extracting(Member::getEmail).isEqualTo(email);
+        assertThat(repository.findByEmail(email)).extracting(Member::getId).isEqualTo(member.getId());
+        // The new email is taken although the member does not live on the email's owner
+        assertThatThrownBy(() -> repository.save(member("Other", email))).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    private MemberPartitions partitions(int count) {
+        // Both databases share the test's client, which is closed after each test
+        return new MemberPartitions(List.of(), templates, count);
+    }
+}
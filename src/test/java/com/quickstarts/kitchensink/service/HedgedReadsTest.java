@@ -0,0 +1,104 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.ReadPreference;
+import com.quickstarts.kitchensink.configuration.HedgingProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.EmbeddedMemberRepository;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HedgedReadsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EmbeddedMemberRepository primary = new EmbeddedMemberRepository();
+    private final EmbeddedMemberRepository secondary = new EmbeddedMemberRepository();
+    private final MemberReadRouter router = mock(MemberReadRouter.class);
+    private HedgedReads hedgedReads;
+    private String id;
+
+    @BeforeEach
+    void setUp() {
+        Member member = new Member();
+        member.setName("Akhil");
+        member.setEmail("akhil@example.com");
+        id = primary.save(member).getId();
+        secondary.save(member);
+
+        HedgingProperties properties = new HedgingProperties();
+        properties.setEnabled(true);
+        properties.setMinSamples(0);
+        properties.setMinDelay(Duration.ofMillis(500));
+        when(router.repositoryFor(any(ReadPreference.class))).thenReturn(secondary);
+        hedgedReads = new HedgedReads(properties, router, mock(ReadYourWritesTracker.class), meterRegistry);
+    }
+
+    @Test
+    void testSlowLookupIsAnsweredByHedge() {
+        Optional<Member> member = hedgedReads.findById(primary, id, () -> slow(primary, 2_000));
+
+        assertThat(member).isPresent();
+        assertThat(meterRegistry.counter("kitchensink.members.hedge.fired").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("kitchensink.members.hedge.won").count()).isEqualTo(1);
+    }
+
+    @Test
+    void testFastLookupIsNotHedged() {
+        assertThat(hedgedReads.findById(primary, id, () -> primary.findById(id))).isPresent();
+
+        assertThat(meterRegistry.counter("kitchensink.members.hedge.fired").count()).isZero();
+    }
+
+    @Test
+    void testHedgeMissingMemberDoesNotWin() {
+        secondary.deleteAll();
+
+        assertThat(hedgedReads.findById(primary, id, () -> slow(primary, 800))).isPresent();
+        assertThat(meterRegistry.counter("kitchensink.members.hedge.won").count()).isZero();
+    }
+
+    @Test
+    void testFailedLookupIsNotAnsweredByHedgeMissingMember() {
+        MemberRepository slowSecondary = mock(MemberRepository.class);
+        when(slowSecondary.findById(id)).thenAnswer(invocation -> slow(secondary, 300));
+        when(router.repositoryFor(any(ReadPreference.class))).thenReturn(slowSecondary);
+        secondary.deleteAll();
+
+        assertThatThrownBy(() -> hedgedReads.findById(primary, id, () -> {
+            slow(primary, 600);
+            throw new DataAccessResourceFailureException("primary unreachable");
+        })).isInstanceOf(DataAccessResourceFailureException.class);
+        assertThat(meterRegistry.counter("kitchensink.members.hedge.fired").count()).isEqualTo(1);
+    }
+
+    @Test
+    void testGivesUpAtDeadline() {
+        secondary.deleteAll();
+
+        assertThatThrownBy(() -> RequestDeadline.after(Duration.ofMillis(300))
+                .call(() -> hedgedReads.findById(primary, id, () -> slow(primary, 2_000))))
+                .isInstanceOf(DeadlineExceededException.class);
+    }
+
+    private Optional<Member> slow(MemberRepository repository, long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return repository.findById(id);
+    }
+}
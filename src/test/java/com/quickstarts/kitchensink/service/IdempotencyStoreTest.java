@@ -0,0 +1,158 @@
+package com.quickstarts.kitchensink.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quickstarts.kitchensink.configuration.DeadlineProperties;
+import com.quickstarts.kitchensink.configuration.IdempotencyProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.MembersPurgedEvent;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(new IdempotencyProperties(), new DeadlineProperties(),
+            new ObjectMapper(), new StaticListableBeanFactory().getBeanProvider(MongoTemplate.class), new SimpleMeterRegistry());
+
+    @Test
+    void testConcurrentDuplicatesWaitForFirstRequest() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<ResponseEntity<?>>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(CompletableFuture.supplyAsync(() -> store.execute("key-1", member("Akhil"), () -> {
+                executions.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Member saved = member("Akhil");
+                saved.setId("1");
+                return ResponseEntity.ok(saved);
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (CompletableFuture<ResponseEntity<?>> response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+        }
+        assertThat(executions.get()).isEqualTo(1);
+        ResponseEntity<?> retry = store.execute("key-1", member("Akhil"), () -> {
+            throw new AssertionError("must be replayed");
+        });
+        assertThat(retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(retry.getBody()).asString().contains("\"id\":\"1\"");
+    }
+
+    @Test
+    void testRejectsKeyReusedForDifferentRequest() {
+        store.execute("key-2", member("Akhil"), () -> ResponseEntity.ok(member("Akhil")));
+
+        assertThatThrownBy(() -> store.execute("key-2", member("Bhatia"), () -> ResponseEntity.ok(member("Bhatia"))))
+                .isInstanceOfSatisfying(IdempotencyKeyException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    void testFailuresAreNotStored() {
+        assertThatThrownBy(() -> store.execute("key-3", member("Akhil"), () -> {
+            throw new DuplicateKeyException("taken");
+        })).isInstanceOf(DuplicateKeyException.class);
+
+        ResponseEntity<?> retry = store.execute("key-3", member("Akhil"), () -> ResponseEntity.ok(member("Akhil")));
+        assertThat(retry.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+    }
+
+    @Test
+    void testRetryAfterTimeoutRecoversInsteadOfRunningAgain() {
+        assertThatThrownBy(() -> store.execute("key-4", member("Akhil"), () -> {
+            // The insert committed but its acknowledgement was lost
+            throw new QueryTimeoutException("timed out");
+        })).isInstanceOf(QueryTimeoutException.class);
+
+        Member saved = member("Akhil");
+        saved.setId("4");
+        ResponseEntity<?> retry = store.execute("key-4", member("Akhil"), () -> {
+            throw new DuplicateKeyException("must be recovered, not inserted again");
+        }, () -> Optional.of(ResponseEntity.ok(saved)));
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getBody()).isSameAs(saved);
+
+        ResponseEntity<?> replayed = store.execute("key-4", member("Akhil"), () -> {
+            throw new AssertionError("must be replayed");
+        });
+        assertThat(replayed.getBody()).asString().contains("\"id\":\"4\"");
+    }
+
+    @Test
+    void testRetryAfterTimeoutRunsAgainWhenNothingWasCommitted() {
+        assertThatThrownBy(() -> store.execute("key-5", member("Akhil"), () -> {
+            throw new QueryTimeoutException("timed out");
+        })).isInstanceOf(QueryTimeoutException.class);
+
+        ResponseEntity<?> retry = store.execute("key-5", member("Akhil"), () -> ResponseEntity.ok(member("Akhil")),
+                Optional::empty);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void testDuplicateWaitsNoLongerThanItsDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+                store.execute("key-6", member("Akhil"), () -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ResponseEntity.ok(member("Akhil"));
+                }));
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> RequestDeadline.after(Duration.ofMillis(200))
+                .call(() -> store.execute("key-6", member("Akhil"), () -> ResponseEntity.ok(member("Akhil")))))
+                .isInstanceOf(DeadlineExceededException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2_000);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void testPurgedMembersAreNotReplayed() {
+        store.execute("key-7", member("Akhil"), () -> ResponseEntity.ok(member("Akhil")));
+
+        store.onPurged(new MembersPurgedEvent("job-1", "other.com", "admin", 1));
+        ResponseEntity<?> kept = store.execute("key-7", member("Akhil"), () -> {
+            throw new AssertionError("must be replayed");
+        });
+        assertThat(kept.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER)).isEqualTo("true");
+
+        store.onPurged(new MembersPurgedEvent("job-2", "example.com", "admin", 1));
+        ResponseEntity<?> again = store.execute("key-7", member("Akhil"), () -> ResponseEntity.ok(member("Akhil")));
+        assertThat(again.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+    }
+}
@@ -0,0 +1,137 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.ChangeFeedProperties;
+import com.quickstarts.kitchensink.model.MemberChange;
+import com.quickstarts.kitchensink.repository.MembersPurgedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.numbered;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberChangeFeedTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MemberChangeFeed feed = new MemberChangeFeed(properties(), meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        feed.destroy();
+    }
+
+    @Test
+    void testReplaysAfterLastEventIdAndStreamsNewChanges() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            feed.saved(numbered(i), true);
+        }
+
+        RecordingSink resumed = new RecordingSink();
+        feed.subscribe(1L, resumed);
+        feed.onPurged(new MembersPurgedEvent("job", "example.com", "user", 3));
+        await(() -> resumed.events.size() == 3);
+        assertThat(resumed.events).containsExactly("2 REGISTERED", "3 REGISTERED", "4 PURGED");
+
+        // Only the last five changes are kept
+        for (int i = 0; i < 10; i++) {
+            feed.saved(numbered(i), false);
+        }
+        RecordingSink tooOld = new RecordingSink();
+        feed.subscribe(2L, tooOld);
+        RecordingSink fromNow = new RecordingSink();
+        feed.subscribe(null, fromNow);
+        feed.saved(numbered(99), true);
+        await(() -> tooOld.events.size() == 2 && fromNow.events.size() == 1);
+        assertThat(tooOld.events).containsExactly("reset 14", "15 REGISTERED");
+        assertThat(fromNow.events).containsExactly("15 REGISTERED");
+    }
+
+    @Test
+    void testDropsSubscribersThatFallBehind() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink() {
+            @Override
+            public void change(MemberChange change) {
+                writing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.change(change);
+            }
+        };
+        RecordingSink fast = new RecordingSink();
+        feed.subscribe(null, slow);
+        feed.subscribe(null, fast);
+
+        feed.saved(numbered(0), true);
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        // While the first change is being written, two fill the buffer and the next one overflows it.
+        // The subscriber keeping up is given the time to take each change.
+        for (int i = 1; i < 4; i++) {
+            feed.saved(numbered(i), true);
+            int received = i + 1;
+            await(() -> fast.events.size() == received);
+        }
+        assertThat(meterRegistry.get("kitchensink.members.changes.dropped").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("kitchensink.members.changes.subscribers").gauge().value()).isEqualTo(1);
+
+        release.countDown();
+        await(() -> slow.closed);
+        assertThat(slow.events).containsExactly("1 REGISTERED", "dropped 1");
+        assertThat(fast.closed).isFalse();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static ChangeFeedProperties properties() {
+        ChangeFeedProperties properties = new ChangeFeedProperties();
+        properties.setSubscriberBuffer(2);
+        properties.setHistorySize(5);
+        return properties;
+    }
+
+    private static class RecordingSink implements MemberChangeFeed.Sink {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+        volatile boolean closed;
+
+        @Override
+        public void change(MemberChange change) {
+            events.add(change.sequence() + " " + change.type());
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void dropped(long lastEventId) {
+            events.add("dropped " + lastEventId);
+        }
+
+        @Override
+        public void reset(long lastEventId) {
+            events.add("reset " + lastEventId);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.EmbeddedMemberRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberLookupBatcherTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    // Each query takes a while, so lookups arriving meanwhile have one to wait for
+    private final EmbeddedMemberRepository repository = new EmbeddedMemberRepository() {
+        @Override
+        public Optional<Member> findById(String id) {
+            queries.incrementAndGet();
+            pause();
+            return super.findById(id);
+        }
+
+        @Override
+        public List<Member> findAllById(Iterable<String> ids) {
+            queries.incrementAndGet();
+            pause();
+            return super.findAllById(ids);
+        }
+    };
+
+    @Test
+    void testConcurrentLookupsShareOneQuery() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(repository.save(member("Member", "member" + i + "@example.com")).getId());
+        }
+        MemberLookupBatcher batcher = new MemberLookupBatcher(Duration.ofSeconds(5), 100, new SimpleMeterRegistry());
+
+        List<CompletableFuture<Optional<Member>>> lookups = new ArrayList<>();
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String id : ids) {
+                lookups.add(CompletableFuture.supplyAsync(() -> batcher.findById(repository, id), requests));
+            }
+            lookups.add(CompletableFuture.supplyAsync(() -> batcher.findById(repository, "missing"), requests));
+
+            for (int i = 0; i < ids.size(); i++) {
+                assertThat(lookups.get(i).join()).get().extracting(Member::getId).isEqualTo(ids.get(i));
+            }
+            assertThat(lookups.get(ids.size()).join()).isEmpty();
+        }
+        assertThat(queries.get()).isLessThan(ids.size());
+        batcher.destroy();
+    }
+
+    @Test
+    void testLoneLookupIsNotHeldForTheWindow() {
+        String id = repository.save(member("Member", "member@example.com")).getId();
+        MemberLookupBatcher batcher = new MemberLookupBatcher(Duration.ofSeconds(5), 100, new SimpleMeterRegistry());
+
+        long start = System.nanoTime();
+        assertThat(batcher.findById(repository, id)).isPresent();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2_000);
+        assertThat(queries.get()).isEqualTo(1);
+        batcher.destroy();
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
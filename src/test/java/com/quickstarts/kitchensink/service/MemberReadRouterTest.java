@@ -0,0 +1,136 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.quickstarts.kitchensink.configuration.ReadRoutingProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.MongoTestingUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A single-node replica set has no secondary, the test checks the read preference each find was sent with
+class MemberReadRouterTest extends MongoTestingUtil {
+
+    private final List<String> findModes = new CopyOnWriteArrayList<>();
+    private MongoClient client;
+    private MemberRepository primary;
+    private ReadYourWritesTracker readYourWrites;
+    private MemberReadRouter router;
+
+    @BeforeEach
+    void setUp() {
+        CommandListener modes = new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                if ("find".equals(event.getCommandName())) {
+                    BsonDocument readPreference = event.getCommand().getDocument("$readPreference", null);
+                    findModes.add(readPreference != null ? readPreference.getString("mode").getValue() : "primary");
+                }
+            }
+        };
+        client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongoDBContainer.getReplicaSetUrl()))
+                .addCommandListener(modes)
+                .build());
+        MongoDatabaseFactory factory = new SimpleMongoClientDatabaseFactory(client, "testdb");
+        MongoTemplate template = new MongoTemplate(factory);
+        template.remove(new Query(), Member.class);
+        primary = new MongoRepositoryFactory(template).getRepository(MemberRepository.class);
+
+        ReadRoutingProperties properties = new ReadRoutingProperties();
+        properties.setEnabled(true);
+        properties.setReadYourWritesWindow(Duration.ofMillis(500));
+        properties.getOperations().put(MemberReadOperation.LIST, route("secondaryPreferred"));
+        properties.getOperations().put(MemberReadOperation.GET, route("nearest"));
+        readYourWrites = new ReadYourWritesTracker(properties);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of(
+                "mongoDatabaseFactory", factory, "mongoConverter", template.getConverter()));
+        router = new MemberReadRouter(primary, beans.getBeanProvider(MongoDatabaseFactory.class),
+                beans.getBeanProvider(MongoConverter.class), readYourWrites, new SimpleMeterRegistry(), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        client.close();
+    }
+
+    @Test
+    void testOperationsUseTheirReadPreference() {
+        signIn("akhil");
+        Member saved = primary.save(member("Akhil", "akhil@example.com"));
+        findModes.clear();
+
+        assertThat(router.repositoryFor(MemberReadOperation.LIST).findAllByOrderByNameAsc()).hasSize(1);
+        assertThat(router.repositoryFor(MemberReadOperation.GET).findById(saved.getId())).isPresent();
+
+        assertThat(findModes).containsExactly("secondaryPreferred", "nearest");
+    }
+
+    @Test
+    void testReadAfterWriteStaysOnPrimaryInsideTheWindow() throws InterruptedException {
+        signIn("akhil");
+        Member saved = primary.save(member("Akhil", "akhil@example.com"));
+        readYourWrites.recordWrite();
+        findModes.clear();
+
+        assertThat(router.repositoryFor(MemberReadOperation.GET).findById(saved.getId())).isPresent();
+        assertThat(router.repositoryFor(MemberReadOperation.LIST).findAllByOrderByNameAsc()).hasSize(1);
+        assertThat(findModes).containsExactly("primary", "primary");
+
+        // Another client has not written and keeps its configured preference
+        signIn("bhatia");
+        findModes.clear();
+        router.repositoryFor(MemberReadOperation.GET).findById(saved.getId());
+        assertThat(findModes).containsExactly("nearest");
+
+        signIn("akhil");
+        Thread.sleep(600);
+        findModes.clear();
+        router.repositoryFor(MemberReadOperation.GET).findById(saved.getId());
+        assertThat(findModes).containsExactly("nearest");
+    }
+
+    @Test
+    void testAnonymousWritesAreNotTracked() {
+        readYourWrites.recordWrite();
+
+        assertThat(readYourWrites.inWindow()).isFalse();
+    }
+
+    private static void signIn(String username) {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(username, null, List.of()));
+    }
+
+    private static ReadRoutingProperties.Route route(String readPreference) {
+        ReadRoutingProperties.Route route = new ReadRoutingProperties.Route();
+        route.setReadPreference(readPreference);
+        return route;
+    }
+}
@@ -0,0 +1,115 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.quickstarts.kitchensink.configuration.MemberStatisticsProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.model.MemberStats;
+import com.quickstarts.kitchensink.repository.MemberCollections;
+import com.quickstarts.kitchensink.repository.MemberRepository;
+import com.quickstarts.kitchensink.util.MongoTestingUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.idAt;
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class MemberStatisticsReconcilerTest extends MongoTestingUtil {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    private MongoClient client;
+    private MongoTemplate template;
+    private MemberStatistics statistics;
+    private MemberStatisticsReconciler reconciler;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(mongoDBContainer.getReplicaSetUrl());
+        template = new MongoTemplate(client, "testdb");
+        template.remove(new Query(), Member.class);
+        MemberStatisticsProperties properties = new MemberStatisticsProperties();
+        statistics = new MemberStatistics(properties);
+        MemberRepository repository = new MongoRepositoryFactory(template).getRepository(MemberRepository.class);
+        MemberCollections collections = new MemberCollections(repository,
+                new StaticListableBeanFactory(Map.of("mongoTemplate", template)).getBeanProvider(MongoTemplate.class));
+        reconciler = new MemberStatisticsReconciler(statistics, collections, repository, properties);
+        now = System.currentTimeMillis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    void testReconcileBucketsByObjectIdTimestamp() {
+        template.insert(member(idAt(now - 3 * HOUR), "Member", "a@gmail.com"));
+        template.insert(member(idAt(now - 3 * HOUR), "Member", "b@gmail.com"));
+        template.insert(member(idAt(now - HOUR), "Member", "c@example.com"));
+        template.insert(member(idAt(now), "Member", "d@gmail.com"));
+        // Older than the 24 buckets, counted in the total only
+        template.insert(member(idAt(now - 30 * HOUR), "Member", "e@example.com"));
+
+        reconciler.reconcile();
+
+        MemberStats stats = statistics.snapshot();
+        assertThat(stats.total()).isEqualTo(5);
+        assertThat(stats.reconciledAt()).isNotNull();
+        assertThat(bucket(stats, now - 3 * HOUR)).isEqualTo(2);
+        assertThat(bucket(stats, now - HOUR)).isEqualTo(1);
+        assertThat(bucket(stats, now)).isEqualTo(1);
+        assertThat(stats.registrations().stream().mapToLong(MemberStats.Bucket::count).sum()).isEqualTo(4);
+        assertThat(stats.topDomains()).extracting(MemberStats.DomainCount::domain, MemberStats.DomainCount::count)
+                .startsWith(tuple("gmail.com", 3L));
+    }
+
+    @Test
+    void testIncrementalUpdatesLandInTheirBucketAcrossReconciles() {
+        template.insert(member(idAt(now - 3 * HOUR), "Member", "a@gmail.com"));
+        reconciler.reconcile();
+
+        Member registered = template.insert(member(idAt(now - 2 * HOUR), "Member", "b@gmail.com"));
+        statistics.recordRegistration(registered);
+        assertThat(statistics.snapshot().total()).isEqualTo(2);
+        assertThat(bucket(statistics.snapshot(), now - 2 * HOUR)).isEqualTo(1);
+
+        // Registered while an aggregation is running, which has not seen it
+        MemberStatistics.Mark mark = statistics.mark();
+        Member during = template.insert(member(idAt(now - 5 * HOUR), "Member", "c@example.com"));
+        statistics.recordRegistration(during);
+        statistics.reconcile(mark, 2, Map.of(now - 3 * HOUR - (now - 3 * HOUR) % HOUR, 1L,
+                now - 2 * HOUR - (now - 2 * HOUR) % HOUR, 1L), Map.of("gmail.com", 2L));
+        MemberStats afterMark = statistics.snapshot();
+        assertThat(afterMark.total()).isEqualTo(3);
+        assertThat(bucket(afterMark, now - 5 * HOUR)).isEqualTo(1);
+        assertThat(bucket(afterMark, now)).isZero();
+
+        // The next full reconciliation agrees with what was kept incrementally
+        reconciler.reconcile();
+        MemberStats reconciled = statistics.snapshot();
+        assertThat(reconciled.total()).isEqualTo(3);
+        assertThat(reconciled.registrations()).isEqualTo(afterMark.registrations());
+    }
+
+    private static long bucket(MemberStats stats, long at) {
+        Instant start = Instant.ofEpochMilli(at - at % HOUR);
+        return stats.registrations().stream()
+                .filter(bucket -> bucket.start().equals(start))
+                .mapToLong(MemberStats.Bucket::count)
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,107 @@
+package com.quickstarts.kitchensink.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.quickstarts.kitchensink.configuration.MemberViewProperties;
+import com.quickstarts.kitchensink.model.Member;
+import com.quickstarts.kitchensink.util.MongoTestingUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.quickstarts.kitchensink.util.MemberFixtures.member;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The container is a single-node replica set, which is all a change stream needs
+class MemberViewTest extends MongoTestingUtil {
+
+    private MongoClient client;
+    private MongoTemplate template;
+    private MemberView view;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(mongoDBContainer.getReplicaSetUrl());
+        template = new MongoTemplate(client, "testdb");
+        template.remove(new Query(), Member.class);
+        template.dropCollection(MemberView.CHECKPOINT_COLLECTION);
+        template.save(member("1", "Bhatia", "bhatia@example.com"));
+        view = new MemberView(List.of(template), properties(), new SimpleMeterRegistry());
+        view.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        view.stop();
+        client.close();
+    }
+
+    @Test
+    void testLoadsAndFollowsChanges() throws InterruptedException {
+        await(view::serving);
+        assertThat(view.findAllOrderedByName()).extracting(Member::getName).containsExactly("Bhatia");
+
+        // Written by another instance
+        template.save(member("2", "Akhil", "akhil@example.com"));
+        await(() -> view.findAllOrderedByName().size() == 2);
+        assertThat(view.findAllOrderedByName()).extracting(Member::getName).containsExactly("Akhil", "Bhatia");
+
+        Member renamed = member("1", "Zed", "bhatia@example.com");
+        template.save(renamed);
+        template.remove(member("2", "Akhil", "akhil@example.com"));
+        await(() -> view.findById("2").isEmpty());
+        assertThat(view.findAllOrderedByName()).extracting(Member::getName).containsExactly("Zed");
+        assertThat(view.lag()).isPresent();
+    }
+
+    @Test
+    void testReloadsAfterDrop() throws InterruptedException {
+        await(view::serving);
+
+        template.dropCollection(Member.class);
+        template.save(member("3", "Carol", "carol@example.com"));
+
+        await(() -> view.serving() && view.findById("1").isEmpty() && view.findById("3").isPresent());
+    }
+
+    @Test
+    void testResumesFromStoredTokenAfterRestart() throws InterruptedException {
+        await(view::serving);
+        template.save(member("2", "Akhil", "akhil@example.com"));
+        await(() -> view.findById("2").isPresent());
+        await(() -> template.getCollection(MemberView.CHECKPOINT_COLLECTION).countDocuments() == 1);
+        view.stop();
+
+        // Changed while no view was running
+        template.remove(member("2", "Akhil", "akhil@example.com"));
+        view = new MemberView(List.of(template), properties(), new SimpleMeterRegistry());
+        view.start();
+
+        await(view::serving);
+        Object storedToken = template.getCollection(MemberView.CHECKPOINT_COLLECTION).find().first().get("resumeToken");
+        assertThat(storedToken).isNotNull();
+        assertThat(view.findAllOrderedByName()).extracting(Member::getName).containsExactly("Bhatia");
+    }
+
+    private static MemberViewProperties properties() {
+        MemberViewProperties properties = new MemberViewProperties();
+        properties.setCheckpointInterval(Duration.ZERO);
+        return properties;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+}
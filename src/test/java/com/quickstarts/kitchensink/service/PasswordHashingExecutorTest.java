@@ -0,0 +1,81 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.AuthProperties;
+import com.quickstarts.kitchensink.util.DeadlineExceededException;
+import com.quickstarts.kitchensink.util.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PasswordHashingExecutor executor = new PasswordHashingExecutor(properties(), meterRegistry);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.destroy();
+    }
+
+    @Test
+    void testRejectsLoginsBeyondTheQueue() throws Exception {
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> executor.verify(this::blocked));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> executor.verify(this::blocked));
+        Thread.sleep(100);
+
+        assertThatThrownBy(() -> executor.verify(() -> "rejected")).isInstanceOf(LoginThrottledException.class);
+        assertThat(meterRegistry.counter("kitchensink.auth.password.rejected").count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("verified");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("verified");
+        assertThat(executor.verify(() -> "accepted")).isEqualTo("accepted");
+    }
+
+    @Test
+    void testPropagatesFailedVerification() {
+        assertThatThrownBy(() -> executor.verify(() -> {
+            throw new BadCredentialsException("Bad credentials");
+        })).isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void testGivesUpAtTheRequestDeadline() throws InterruptedException {
+        CompletableFuture.runAsync(() -> executor.verify(this::blocked));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> RequestDeadline.after(Duration.ofMillis(200)).call(() -> executor.verify(() -> "late")))
+                .isInstanceOf(DeadlineExceededException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    private String blocked() {
+        started.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "verified";
+    }
+
+    private static AuthProperties properties() {
+        AuthProperties properties = new AuthProperties();
+        properties.setPasswordThreads(1);
+        properties.setPasswordQueue(1);
+        return properties;
+    }
+}
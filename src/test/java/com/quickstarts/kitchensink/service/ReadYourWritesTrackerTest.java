@@ -0,0 +1,53 @@
+package com.quickstarts.kitchensink.service;
+
+import com.quickstarts.kitchensink.configuration.ReadRoutingProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesTrackerTest {
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testWindowCoversTheLargestMaxStaleness() throws InterruptedException {
+        ReadRoutingProperties properties = new ReadRoutingProperties();
+        properties.setReadYourWritesWindow(Duration.ofMillis(1));
+        properties.getOperations().put(MemberReadOperation.LIST, route("secondaryPreferred", Duration.ofSeconds(120)));
+        properties.getOperations().put(MemberReadOperation.GET, route("nearest", Duration.ofSeconds(90)));
+        assertThat(properties.effectiveReadYourWritesWindow()).isEqualTo(Duration.ofSeconds(120));
+
+        ReadYourWritesTracker readYourWrites = new ReadYourWritesTracker(properties);
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated("akhil", null, List.of()));
+        readYourWrites.recordWrite();
+        Thread.sleep(20);
+
+        assertThat(readYourWrites.inWindow()).isTrue();
+    }
+
+    @Test
+    void testConfiguredWindowAppliesWithoutMaxStaleness() {
+        ReadRoutingProperties properties = new ReadRoutingProperties();
+        properties.getOperations().put(MemberReadOperation.LIST, route("secondaryPreferred", null));
+        properties.getOperations().put(MemberReadOperation.GET, route("primary", Duration.ofSeconds(300)));
+
+        assertThat(properties.effectiveReadYourWritesWindow()).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    private static ReadRoutingProperties.Route route(String readPreference, Duration maxStaleness) {
+        ReadRoutingProperties.Route route = new ReadRoutingProperties.Route();
+        route.setReadPreference(readPreference);
+        route.setMaxStaleness(maxStaleness);
+        return route;
+    }
+}
@@ -0,0 +1,25 @@
+package com.quickstarts.kitchensink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BCryptCalibrationTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testPicksTheHighestStrengthWithinTheTarget() {
+        // 40ms at cost 10 doubles to 80ms at 11, 160ms at 12 and 320ms at 13
+        assertThat(BCryptCalibration.strengthFor(250 * MILLIS, 40 * MILLIS, 10, 14)).isEqualTo(12);
+        assertThat(BCryptCalibration.strengthFor(320 * MILLIS, 40 * MILLIS, 10, 14)).isEqualTo(13);
+    }
+
+    @Test
+    void testStaysWithinTheBounds() {
+        assertThat(BCryptCalibration.strengthFor(250 * MILLIS, 400 * MILLIS, 10, 14)).isEqualTo(10);
+        assertThat(BCryptCalibration.strengthFor(250 * MILLIS, 0, 10, 14)).isEqualTo(14);
+    }
+}
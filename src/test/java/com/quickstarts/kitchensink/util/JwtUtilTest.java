@@ -0,0 +1,37 @@
+package com.quickstarts.kitchensink.util;
+
+import com.quickstarts.kitchensink.configuration.AuthProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTest {
+
+    private final JwtUtil jwtUtil = new JwtUtil(new AuthProperties());
+
+    @Test
+    void testAccessAndRefreshTokensAreNotInterchangeable() {
+        String access = jwtUtil.generateToken("user");
+        String refresh = jwtUtil.generateRefreshToken("user");
+
+        assertThat(jwtUtil.validateToken(access, "user")).isTrue();
+        assertThat(jwtUtil.validateToken(access, "admin")).isFalse();
+        assertThat(jwtUtil.validateToken(refresh, "user")).isFalse();
+        assertThat(jwtUtil.validateRefreshToken(refresh)).isEqualTo("user");
+        assertThatThrownBy(() -> jwtUtil.validateRefreshToken(access)).isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> jwtUtil.validateRefreshToken("not-a-token")).isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void testExpiredRefreshTokenIsRejected() {
+        AuthProperties properties = new AuthProperties();
+        properties.setRefreshTokenTtl(Duration.ofSeconds(-1));
+        String expired = new JwtUtil(properties).generateRefreshToken("user");
+
+        assertThatThrownBy(() -> jwtUtil.validateRefreshToken(expired)).isInstanceOf(BadCredentialsException.class);
+    }
+}
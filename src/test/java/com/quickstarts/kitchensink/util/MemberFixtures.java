@@ -0,0 +1,39 @@
+package com.quickstarts.kitchensink.util;
+
+import com.quickstarts.kitchensink.model.Member;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+
+public final class MemberFixtures {
+
+    private MemberFixtures() {
+    }
+
+    public static Member member(String name) {
+        return member(name, name.toLowerCase() + "@example.com");
+    }
+
+    public static Member member(String name, String email) {
+        return member(null, name, email);
+    }
+
+    public static Member member(String id, String name, String email) {
+        Member member = new Member();
+        member.setId(id);
+        member.setName(name);
+        member.setEmail(email);
+        member.setPhoneNumber("1234567890");
+        return member;
+    }
+
+    // The i-th of a run of members with distinct ids and emails
+    public static Member numbered(int i) {
+        return member("id" + i, "Member", "member" + i + "@example.com");
+    }
+
+    // An ObjectId as minted at the given time, its timestamp is when the member registered
+    public static String idAt(long epochMillis) {
+        return new ObjectId(new Date(epochMillis)).toHexString();
+    }
+}
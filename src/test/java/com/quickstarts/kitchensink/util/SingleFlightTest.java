@@ -0,0 +1,113 @@
+package com.quickstarts.kitchensink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("42", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "member-42";
+                })));
+            }
+            while (!singleFlight.inFlight("42")) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("member-42");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads.get()).isLessThan(8);
+        assertThat(singleFlight.inFlight("42")).isFalse();
+        assertThat(singleFlight.execute("42", () -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    void testFailureIsNotRemembered() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        assertThatThrownBy(() -> singleFlight.execute("42", () -> {
+            throw new IllegalStateException("down");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(singleFlight.execute("42", () -> "up")).isEqualTo("up");
+    }
+
+    @Test
+    void testCallersWaitOnTheirOwnDeadlines() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<String> loader = () -> {
+            if (loads.incrementAndGet() == 1) {
+                // The first load is slow and runs until its leader's deadline
+                RequestDeadline deadline = RequestDeadline.current();
+                while (!deadline.expired()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                }
+                deadline.check();
+            }
+            return "member-42";
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() ->
+                    RequestDeadline.after(Duration.ofMillis(400)).call(() -> singleFlight.execute("42", loader)));
+            while (!singleFlight.inFlight("42")) {
+                Thread.sleep(1);
+            }
+            Future<String> patient = executor.submit(() ->
+                    RequestDeadline.after(Duration.ofSeconds(5)).call(() -> singleFlight.execute("42", loader)));
+
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> RequestDeadline.after(Duration.ofMillis(50))
+                    .call(() -> singleFlight.execute("42", loader)))
+                    .isInstanceOf(DeadlineExceededException.class);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(300);
+
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(DeadlineExceededException.class);
+            // The leader's timeout is not handed on, the later deadline loads again
+            assertThat(patient.get(5, TimeUnit.SECONDS)).isEqualTo("member-42");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
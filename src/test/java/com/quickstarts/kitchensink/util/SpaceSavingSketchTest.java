@@ -0,0 +1,42 @@
+package com.quickstarts.kitchensink.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void testExactCountsWhileUnderCapacity() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+        sketch.add("gmail.com", 3);
+        sketch.add("example.com", 1);
+        sketch.add("gmail.com", 1);
+
+        List<SpaceSavingSketch.Entry> top = sketch.top(5);
+
+        assertThat(top).containsExactly(
+                new SpaceSavingSketch.Entry("gmail.com", 4, 0),
+                new SpaceSavingSketch.Entry("example.com", 1, 0));
+    }
+
+    @Test
+    void testHeavyHittersSurviveEviction() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(8);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add("gmail.com", 1);
+            sketch.add("rare" + i + ".com", 1);
+            if (i % 2 == 0) {
+                sketch.add("yahoo.com", 1);
+            }
+        }
+
+        List<SpaceSavingSketch.Entry> top = sketch.top(2);
+
+        assertThat(top).extracting(SpaceSavingSketch.Entry::item).containsExactly("gmail.com", "yahoo.com");
+        assertThat(top.get(0).count() - top.get(0).error()).isLessThanOrEqualTo(1_000);
+        assertThat(top.get(0).count()).isGreaterThanOrEqualTo(1_000);
+    }
+}